@@ -1,12 +1,23 @@
 package ast;
 
-import java.util.LinkedList;
+import util.Seq;
+import util.Symbol;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Ast {
 
   // ///////////////////////////////////////////////////////////
   // type
+  //
+  // Types are canonical: there is one object for each of "int",
+  // "boolean" and "int[]", and one "ClassType" for each class name,
+  // so two types are the same exactly when they are "==".
   public static class Type {
+    public static final Boolean BOOLEAN = new Boolean();
+    public static final Int INT = new Int();
+    public static final IntArray INT_ARRAY = new IntArray();
+
     public static abstract class T implements ast.Acceptable {
       // boolean: -1
       // int: 0
@@ -18,7 +29,7 @@ public class Ast {
 
     // boolean
     public static class Boolean extends T {
-      public Boolean() {
+      private Boolean() {
       }
 
       @Override
@@ -39,15 +50,28 @@ public class Ast {
 
     // class
     public static class ClassType extends T {
-      public String id;
+      // the type of each class, shared by all compilations like the
+      // symbols themselves
+      private static final ConcurrentHashMap<Symbol, ClassType> types =
+          new ConcurrentHashMap<>();
+
+      public final Symbol id;
 
-      public ClassType(String id) {
+      private ClassType(Symbol id) {
         this.id = id;
       }
 
+      // the type of the class "id"
+      public static ClassType of(Symbol id) {
+        ClassType t = types.get(id);
+        if (t == null)
+          t = types.computeIfAbsent(id, ClassType::new);
+        return t;
+      }
+
       @Override
       public String toString() {
-        return this.id;
+        return this.id.toString();
       }
 
       @Override
@@ -63,7 +87,7 @@ public class Ast {
 
     // int
     public static class Int extends T {
-      public Int() {
+      private Int() {
       }
 
       @Override
@@ -84,7 +108,7 @@ public class Ast {
 
     // int[]
     public static class IntArray extends T {
-      public IntArray() {
+      private IntArray() {
       }
 
       @Override
@@ -113,9 +137,9 @@ public class Ast {
 
     public static class DecSingle extends T {
       public Type.T type;
-      public String id;
+      public Symbol id;
 
-      public DecSingle(Type.T type, String id) {
+      public DecSingle(Type.T type, Symbol id) {
         this.type = type;
         this.id = id;
       }
@@ -199,13 +223,13 @@ public class Ast {
     // Call
     public static class Call extends T {
       public T exp;
-      public String id;
-      public LinkedList<T> args;
-      public String type; // type of first field "exp"
-      public LinkedList<Type.T> at; // arg's type
+      public Symbol id;
+      public Seq<T> args;
+      public Symbol type; // type of first field "exp"
+      public Seq<Type.T> at; // arg's type
       public Type.T rt;
 
-      public Call(T exp, String id, LinkedList<T> args) {
+      public Call(T exp, Symbol id, Seq<T> args) {
         this.exp = exp;
         this.id = id;
         this.args = args;
@@ -231,17 +255,17 @@ public class Ast {
 
     // Id
     public static class Id extends T {
-      public String id; // name of the id
+      public Symbol id; // name of the id
       public Type.T type; // type of the id
       public boolean isField; // whether or not this is a class field
 
-      public Id(String id) {
+      public Id(Symbol id) {
         this.id = id;
         this.type = null;
         this.isField = false;
       }
 
-      public Id(String id, Type.T type, boolean isField) {
+      public Id(Symbol id, Type.T type, boolean isField) {
         this.id = id;
         this.type = type;
         this.isField = isField;
@@ -304,9 +328,9 @@ public class Ast {
 
     // new A();
     public static class NewObject extends T {
-      public String id;
+      public Symbol id;
 
-      public NewObject(String id) {
+      public NewObject(Symbol id) {
         this.id = id;
       }
 
@@ -408,11 +432,11 @@ public class Ast {
 
     // assign
     public static class Assign extends T {
-      public String id;
+      public Symbol id;
       public Exp.T exp;
       public Type.T type; // type of the id
 
-      public Assign(String id, Exp.T exp) {
+      public Assign(Symbol id, Exp.T exp) {
         this.id = id;
         this.exp = exp;
         this.type = null;
@@ -426,11 +450,11 @@ public class Ast {
 
     // assign-array
     public static class AssignArray extends T {
-      public String id;
+      public Symbol id;
       public Exp.T index;
       public Exp.T exp;
 
-      public AssignArray(String id, Exp.T index, Exp.T exp) {
+      public AssignArray(Symbol id, Exp.T index, Exp.T exp) {
         this.id = id;
         this.index = index;
         this.exp = exp;
@@ -444,9 +468,9 @@ public class Ast {
 
     // block
     public static class Block extends T {
-      public LinkedList<T> stms;
+      public Seq<T> stms;
 
-      public Block(LinkedList<T> stms) {
+      public Block(Seq<T> stms) {
         this.stms = stms;
       }
 
@@ -514,21 +538,26 @@ public class Ast {
 
     public static class MethodSingle extends T {
       public Type.T retType;
-      public String id;
-      public LinkedList<Dec.T> formals;
-      public LinkedList<Dec.T> locals;
-      public LinkedList<Stm.T> stms;
+      public Symbol id;
+      public Seq<Dec.T> formals;
+      public Seq<Dec.T> locals;
+      public Seq<Stm.T> stms;
       public Exp.T retExp;
+      // the tokens of the body, from its "{" to after its "}", while
+      // it is skimmed but not parsed yet (see "-lazy"); else -1
+      public int bodyStart, bodyEnd;
 
-      public MethodSingle(Type.T retType, String id,
-                          LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
-                          LinkedList<Stm.T> stms, Exp.T retExp) {
+      public MethodSingle(Type.T retType, Symbol id,
+                          Seq<Dec.T> formals, Seq<Dec.T> locals,
+                          Seq<Stm.T> stms, Exp.T retExp) {
         this.retType = retType;
         this.id = id;
         this.formals = formals;
         this.locals = locals;
         this.stms = stms;
         this.retExp = retExp;
+        this.bodyStart = -1;
+        this.bodyEnd = -1;
       }
 
       @Override
@@ -544,14 +573,14 @@ public class Ast {
     }
 
     public static class ClassSingle extends T {
-      public String id;
-      public String extendss; // null for non-existing "extends"
-      public LinkedList<Dec.T> decs;
-      public LinkedList<Method.T> methods;
-
-      public ClassSingle(String id, String extendss,
-                         LinkedList<Dec.T> decs,
-                         LinkedList<Method.T> methods) {
+      public Symbol id;
+      public Symbol extendss; // null for non-existing "extends"
+      public Seq<Dec.T> decs;
+      public Seq<Method.T> methods;
+
+      public ClassSingle(Symbol id, Symbol extendss,
+                         Seq<Dec.T> decs,
+                         Seq<Method.T> methods) {
         this.id = id;
         this.extendss = extendss;
         this.decs = decs;
@@ -571,11 +600,11 @@ public class Ast {
     }
 
     public static class MainClassSingle extends T {
-      public String id;
-      public String arg;
+      public Symbol id;
+      public Symbol arg;
       public Stm.T stm;
 
-      public MainClassSingle(String id, String arg, Stm.T stm) {
+      public MainClassSingle(Symbol id, Symbol arg, Stm.T stm) {
         this.id = id;
         this.arg = arg;
         this.stm = stm;
@@ -596,9 +625,9 @@ public class Ast {
 
     public static class ProgramSingle extends T {
       public MainClass.T mainClass;
-      public LinkedList<Class.T> classes;
+      public Seq<Class.T> classes;
 
-      public ProgramSingle(MainClass.T mainClass, LinkedList<Class.T> classes) {
+      public ProgramSingle(MainClass.T mainClass, Seq<Class.T> classes) {
         this.mainClass = mainClass;
         this.classes = classes;
       }
@@ -0,0 +1,109 @@
+package ast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// A directory of elaborated programs, addressed by the contents of
+// their source.
+//
+// The entry of a source file is its elaborated AST, in the binary form
+// of "Flat", in a file named after the SHA-256 of the source bytes
+// (and of the version of that form). A compile that finds the entry of
+// its input skips lexing, parsing and elaboration.
+//
+// Only programs that elaborate without error are stored, since the
+// elaborator stops at the first one. The cache never makes a compile
+// fail: an entry that cannot be read is a miss, and one that cannot be
+// written is skipped. Entries are written to a temporary file and then
+// renamed, so that compilers sharing a directory never see half of one.
+public class Cache {
+  private final Path dir;
+  private final PrintStream warnings; // where a failed write is reported
+
+  public Cache(String dir) {
+    this(dir, System.err);
+  }
+
+  public Cache(String dir, PrintStream warnings) {
+    this.dir = Paths.get(dir);
+    this.warnings = warnings;
+  }
+
+  // the key of the source "buf", from its position to its limit
+  public static String key(ByteBuffer buf) {
+    return key(buf, false);
+  }
+
+  // the key of "buf", compiled with "-lazy" or not: the two do not
+  // elaborate to the same program
+  public static String key(ByteBuffer buf, boolean lazyMethods) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e); // every Java platform has SHA-256
+    }
+    md.update(ByteBuffer.allocate(4).putInt(0, Flat.VERSION));
+    if (lazyMethods)
+      md.update((byte) 1);
+    md.update(buf.duplicate());
+    StringBuilder sb = new StringBuilder();
+    for (byte b : md.digest())
+      sb.append(String.format("%02x", b & 0xff));
+    return sb.toString();
+  }
+
+  private Path entry(String key) {
+    return dir.resolve(key + ".ast");
+  }
+
+  // the program stored under "key", or null. An entry that cannot be
+  // read, whatever the reason, is deleted.
+  public Flat load(String key) {
+    Path p = entry(key);
+    if (!Files.isRegularFile(p))
+      return null;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(p), 1 << 16))) {
+      return Flat.read(in, Files.size(p));
+    } catch (IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(p);
+      } catch (IOException ignored) {
+      }
+      return null;
+    }
+  }
+
+  public void store(String key, Flat flat) {
+    Path tmp = null;
+    try {
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, key, ".tmp");
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+        flat.write(out);
+      }
+      Files.move(tmp, entry(key), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      warnings.println("warning: cannot write the AST cache: " + e);
+      try {
+        if (tmp != null)
+          Files.deleteIfExists(tmp);
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -8,6 +8,8 @@ import ast.Ast.Stm.Assign;
 import ast.Ast.Stm.If;
 import ast.Ast.Stm.Print;
 
+import static util.Symbol.symbol;
+
 public class Fac {
   // Lab2, exercise 2: read the following code and make
   // sure you understand how the sample program "test/Fac.java" is represented.
@@ -25,26 +27,26 @@ public class Fac {
 
   // // main class: "Factorial"
   static MainClass.T factorial = new MainClassSingle(
-      "Factorial", "a", new Print(new Call(
-      new NewObject("Fac"), "ComputeFac",
+      symbol("Factorial"), symbol("a"), new Print(new Call(
+      new NewObject(symbol("Fac")), symbol("ComputeFac"),
       new util.Flist<Exp.T>().list(new Num(10)))));
 
   // // class "Fac"
-  static Ast.Class.T fac = new Ast.Class.ClassSingle("Fac", null,
+  static Ast.Class.T fac = new Ast.Class.ClassSingle(symbol("Fac"), null,
       new util.Flist<Dec.T>().list(),
       new util.Flist<Method.T>().list(new Method.MethodSingle(
-          new Type.Int(), "ComputeFac", new util.Flist<Dec.T>()
-          .list(new Dec.DecSingle(new Type.Int(), "num")),
+          Type.INT, symbol("ComputeFac"), new util.Flist<Dec.T>()
+          .list(new Dec.DecSingle(Type.INT, symbol("num"))),
           new util.Flist<Dec.T>().list(new Dec.DecSingle(
-              new Type.Int(), "num_aux")), new util.Flist<Stm.T>()
-          .list(new If(new Lt(new Id("num"),
-              new Num(1)), new Assign("num_aux",
-              new Num(1)), new Assign("num_aux",
-              new Times(new Id("num"), new Call(
-                  new This(), "ComputeFac",
+              Type.INT, symbol("num_aux"))), new util.Flist<Stm.T>()
+          .list(new If(new Lt(new Id(symbol("num")),
+              new Num(1)), new Assign(symbol("num_aux"),
+              new Num(1)), new Assign(symbol("num_aux"),
+              new Times(new Id(symbol("num")), new Call(
+                  new This(), symbol("ComputeFac"),
                   new util.Flist<Exp.T>().list(new Sub(
-                      new Id("num"), new Num(1)))))))),
-          new Id("num_aux"))));
+                      new Id(symbol("num")), new Num(1)))))))),
+          new Id(symbol("num_aux")))));
 
   // program
   public static Program.T prog = new ProgramSingle(factorial,
@@ -56,40 +58,40 @@ public class Fac {
 
   // main class: Sum
   static MainClass.T sum = new MainClassSingle(
-      "Sum", "a",
+      symbol("Sum"), symbol("a"),
       new Print(
           new Call(
-              new NewObject("Doit"), "doit",
+              new NewObject(symbol("Doit")), symbol("doit"),
               new util.Flist<Exp.T>().list(new Num(101))
           )
       )
   );
 
-  static Ast.Class.T doit = new Ast.Class.ClassSingle("Doit", null,
+  static Ast.Class.T doit = new Ast.Class.ClassSingle(symbol("Doit"), null,
       new util.Flist<Dec.T>().list(),
       new util.Flist<Method.T>().list(
           new Method.MethodSingle(
-              new Type.Int(),
-              "doit",
+              Type.INT,
+              symbol("doit"),
               new util.Flist<Dec.T>().list(
-                  new Dec.DecSingle(new Type.Int(), "n")
+                  new Dec.DecSingle(Type.INT, symbol("n"))
               ),
               new util.Flist<Dec.T>().list(
-                  new Dec.DecSingle(new Type.Int(), "sum"),
-                  new Dec.DecSingle(new Type.Int(), "i")
+                  new Dec.DecSingle(Type.INT, symbol("sum")),
+                  new Dec.DecSingle(Type.INT, symbol("i"))
               ),
               new util.Flist<Stm.T>().list(
-                  new Assign("i", new Num(0)),
-                  new Assign("sum", new Num(0)),
+                  new Assign(symbol("i"), new Num(0)),
+                  new Assign(symbol("sum"), new Num(0)),
                   new Stm.While(
-                      new Lt(new Id("i"), new Id("n")),
+                      new Lt(new Id(symbol("i")), new Id(symbol("n"))),
                       new Stm.Block(new util.Flist<Stm.T>().list(
-                          new Assign("sum", new Add(new Id("sum"), new Id("i"))),
-                          new Assign("i", new Add(new Id("i"), new Num(1)))
+                          new Assign(symbol("sum"), new Add(new Id(symbol("sum")), new Id(symbol("i")))),
+                          new Assign(symbol("i"), new Add(new Id(symbol("i")), new Num(1)))
                       ))
                   )
               ),
-              new Id("sum")
+              new Id(symbol("sum"))
           )
       )
   );
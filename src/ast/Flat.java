@@ -0,0 +1,1179 @@
+package ast;
+
+import ast.Ast.Class;
+import ast.Ast.Class.ClassSingle;
+import ast.Ast.Dec;
+import ast.Ast.Exp;
+import ast.Ast.Exp.*;
+import ast.Ast.MainClass;
+import ast.Ast.MainClass.MainClassSingle;
+import ast.Ast.Method;
+import ast.Ast.Method.MethodSingle;
+import ast.Ast.Program;
+import ast.Ast.Program.ProgramSingle;
+import ast.Ast.Stm;
+import ast.Ast.Stm.*;
+import ast.Ast.Type;
+import util.Seq;
+import util.Symbol;
+import util.Trampoline;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// A whole program, flattened into one int array.
+//
+// A node is a tag followed by its fields, at some offset of "data";
+// a field holding a child holds the offset of that child. A list is a
+// count followed by the offsets of its elements. Identifiers are
+// indices into the side table "symbols", and a type is a single int:
+// one of the negative codes below, or the symbol of a class. So a
+// program of millions of nodes is two arrays instead of millions of
+// objects, laid out in the order they are visited.
+//
+// Every node carries the slots the elaborator fills in ("Call.type",
+// "Call.at", "Call.rt", "Id.type", "Id.isField" and "Assign.type"),
+// with room for the types of "Call.at" too: annotating a program
+// writes in place, and never grows the arena.
+//
+// A flat program is "Acceptable", so that the elaborator and all the
+// translators work on either form. "accept" builds only the frame of
+// the program: its classes, fields and method signatures. The body of
+// a method is decoded when the visitor gets to the method, and is
+// copied back into the slots and dropped when it gets to the next one,
+// so that a walk never holds more than a body at a time.
+//
+// Encoding, decoding and annotating all run on the explicit stack of a
+// "Trampoline", so a program nested too deep for the Java stack is
+// flattened and rebuilt all the same.
+public class Flat implements Acceptable {
+  // node tags
+  public static final int PROGRAM = 0;
+  public static final int MAIN_CLASS = 1;
+  public static final int CLASS = 2;
+  public static final int METHOD = 3;
+  public static final int DEC = 4;
+  public static final int ASSIGN = 5;
+  public static final int ASSIGN_ARRAY = 6;
+  public static final int BLOCK = 7;
+  public static final int IF = 8;
+  public static final int PRINT = 9;
+  public static final int WHILE = 10;
+  public static final int ADD = 11;
+  public static final int AND = 12;
+  public static final int ARRAY_SELECT = 13;
+  public static final int CALL = 14;
+  public static final int FALSE = 15;
+  public static final int ID = 16;
+  public static final int LENGTH = 17;
+  public static final int LT = 18;
+  public static final int NEW_INT_ARRAY = 19;
+  public static final int NEW_OBJECT = 20;
+  public static final int NOT = 21;
+  public static final int NUM = 22;
+  public static final int SUB = 23;
+  public static final int THIS = 24;
+  public static final int TIMES = 25;
+  public static final int TRUE = 26;
+
+  // "no node", "no symbol" and "no type"
+  public static final int NONE = -1;
+  // type codes, class types being symbols
+  public static final int INT = -2;
+  public static final int BOOLEAN = -3;
+  public static final int INT_ARRAY = -4;
+
+  int[] data;
+  int size;
+  Symbol[] symbols;
+  int nsymbols;
+  // the index of each symbol, only while building or annotating
+  private HashMap<Symbol, Integer> index;
+
+  Flat(int capacity) {
+    this.data = new int[Math.max(capacity, 16)];
+    this.size = 0;
+    this.symbols = new Symbol[16];
+    this.nsymbols = 0;
+  }
+
+  // /////////////////////////////////////////////////////
+  // accessors
+
+  // the offset of the program node
+  public int root() {
+    return 0;
+  }
+
+  public int tag(int n) {
+    return data[n];
+  }
+
+  // field "i" of node "n", or element "i" of list "n"
+  public int field(int n, int i) {
+    return data[n + 1 + i];
+  }
+
+  public int length(int list) {
+    return data[list];
+  }
+
+  public Symbol symbol(int i) {
+    return i == NONE ? null : symbols[i];
+  }
+
+  // the number of ints and symbols used
+  public int size() {
+    return size;
+  }
+
+  public int symbols() {
+    return nsymbols;
+  }
+
+  // /////////////////////////////////////////////////////
+  // building
+
+  private int alloc(int n) {
+    if (size + n > data.length)
+      data = Arrays.copyOf(data, Math.max(size + n, size + (size >> 1)));
+    int at = size;
+    size += n;
+    return at;
+  }
+
+  private int node(int tag, int fields) {
+    int n = alloc(1 + fields);
+    data[n] = tag;
+    return n;
+  }
+
+  private void set(int n, int i, int value) {
+    data[n + 1 + i] = value;
+  }
+
+  private int sym(Symbol s) {
+    if (s == null)
+      return NONE;
+    if (index == null) {
+      index = new HashMap<>();
+      for (int i = 0; i < nsymbols; i++)
+        index.put(symbols[i], i);
+    }
+    Integer i = index.get(s);
+    if (i == null) {
+      if (nsymbols == symbols.length)
+        symbols = Arrays.copyOf(symbols, nsymbols * 2);
+      i = nsymbols;
+      symbols[nsymbols++] = s;
+      index.put(s, i);
+    }
+    return i;
+  }
+
+  private int typeCode(Type.T t) {
+    if (t == null)
+      return NONE;
+    if (t instanceof Type.Int)
+      return INT;
+    if (t instanceof Type.Boolean)
+      return BOOLEAN;
+    if (t instanceof Type.IntArray)
+      return INT_ARRAY;
+    return sym(((Type.ClassType) t).id);
+  }
+
+  private Type.T type(int code) {
+    switch (code) {
+      case NONE:
+        return null;
+      case INT:
+        return Type.INT;
+      case BOOLEAN:
+        return Type.BOOLEAN;
+      case INT_ARRAY:
+        return Type.INT_ARRAY;
+      default:
+        return Type.ClassType.of(symbols[code]);
+    }
+  }
+
+  // A list of "n" types, holding "types" if not null. Its count is
+  // NONE until it is filled in, and it has room for "n" types either
+  // way, so that annotating never allocates.
+  private int typeList(int n, Seq<Type.T> types) {
+    int l = alloc(1 + n);
+    data[l] = NONE;
+    setTypes(l, types);
+    return l;
+  }
+
+  private void setTypes(int l, Seq<Type.T> types) {
+    if (types == null)
+      return;
+    data[l] = types.size();
+    for (int i = 0; i < types.size(); i++)
+      data[l + 1 + i] = typeCode(types.get(i));
+  }
+
+  // Flatten "p". The tree is left untouched.
+  public static Flat encode(Program.T p) {
+    Flat flat = new Flat(1 << 10);
+    p.accept(flat.new Encoder());
+    flat.data = Arrays.copyOf(flat.data, flat.size);
+    flat.index = null;
+    return flat;
+  }
+
+  // Fills the arena in pre-order: a node is allocated before its
+  // children, and its fields are set once they are encoded. A visit
+  // schedules the encoding of the children, and the setting of its
+  // fields, in the order the recursive encoder did them, so the arena
+  // is laid out the same.
+  private class Encoder implements Visitor {
+    private final Trampoline steps = new Trampoline();
+    int n; // the offset of the last node encoded
+
+    private void then(Runnable step) {
+      steps.then(step);
+    }
+
+    // encode "a" into field "i" of node "x"
+    private void encode(int x, int i, Acceptable a) {
+      then(() -> a.accept(this));
+      then(() -> set(x, i, n));
+    }
+
+    // "x" is the node encoded, once its children are
+    private void done(int x) {
+      then(() -> n = x);
+    }
+
+    private <X extends Acceptable> int list(Seq<X> xs) {
+      int l = alloc(1 + xs.size());
+      data[l] = xs.size();
+      for (int i = 0; i < xs.size(); i++)
+        encode(l, i, xs.get(i));
+      return l;
+    }
+
+    private void binary(int tag, Exp.T left, Exp.T right) {
+      int b = node(tag, 2);
+      encode(b, 0, left);
+      encode(b, 1, right);
+      done(b);
+    }
+
+    private void unary(int tag, Acceptable a) {
+      int u = node(tag, 1);
+      encode(u, 0, a);
+      done(u);
+    }
+
+    // expressions
+    @Override
+    public void visit(Add e) {
+      binary(ADD, e.left, e.right);
+    }
+
+    @Override
+    public void visit(And e) {
+      binary(AND, e.left, e.right);
+    }
+
+    @Override
+    public void visit(ArraySelect e) {
+      binary(ARRAY_SELECT, e.array, e.index);
+    }
+
+    @Override
+    public void visit(Call e) {
+      int c = node(CALL, 6);
+      encode(c, 0, e.exp);
+      then(() -> {
+        set(c, 1, sym(e.id));
+        set(c, 2, list(e.args));
+        then(() -> {
+          set(c, 3, sym(e.type));
+          set(c, 4, typeList(e.args.size(), e.at));
+          set(c, 5, typeCode(e.rt));
+        });
+      });
+      done(c);
+    }
+
+    @Override
+    public void visit(False e) {
+      n = node(FALSE, 0);
+    }
+
+    @Override
+    public void visit(Id e) {
+      int i = node(ID, 3);
+      set(i, 0, sym(e.id));
+      set(i, 1, typeCode(e.type));
+      set(i, 2, e.isField ? 1 : 0);
+      n = i;
+    }
+
+    @Override
+    public void visit(Length e) {
+      unary(LENGTH, e.array);
+    }
+
+    @Override
+    public void visit(Lt e) {
+      binary(LT, e.left, e.right);
+    }
+
+    @Override
+    public void visit(NewIntArray e) {
+      unary(NEW_INT_ARRAY, e.exp);
+    }
+
+    @Override
+    public void visit(NewObject e) {
+      int o = node(NEW_OBJECT, 1);
+      set(o, 0, sym(e.id));
+      n = o;
+    }
+
+    @Override
+    public void visit(Not e) {
+      unary(NOT, e.exp);
+    }
+
+    @Override
+    public void visit(Num e) {
+      int o = node(NUM, 1);
+      set(o, 0, e.num);
+      n = o;
+    }
+
+    @Override
+    public void visit(Sub e) {
+      binary(SUB, e.left, e.right);
+    }
+
+    @Override
+    public void visit(This e) {
+      n = node(THIS, 0);
+    }
+
+    @Override
+    public void visit(Times e) {
+      binary(TIMES, e.left, e.right);
+    }
+
+    @Override
+    public void visit(True e) {
+      n = node(TRUE, 0);
+    }
+
+    // statements
+    @Override
+    public void visit(Assign s) {
+      int a = node(ASSIGN, 3);
+      set(a, 0, sym(s.id));
+      encode(a, 1, s.exp);
+      then(() -> set(a, 2, typeCode(s.type)));
+      done(a);
+    }
+
+    @Override
+    public void visit(AssignArray s) {
+      int a = node(ASSIGN_ARRAY, 3);
+      set(a, 0, sym(s.id));
+      encode(a, 1, s.index);
+      encode(a, 2, s.exp);
+      done(a);
+    }
+
+    @Override
+    public void visit(Block s) {
+      int b = node(BLOCK, 1);
+      set(b, 0, list(s.stms));
+      done(b);
+    }
+
+    @Override
+    public void visit(If s) {
+      int i = node(IF, 3);
+      encode(i, 0, s.condition);
+      encode(i, 1, s.thenn);
+      encode(i, 2, s.elsee);
+      done(i);
+    }
+
+    @Override
+    public void visit(Print s) {
+      unary(PRINT, s.exp);
+    }
+
+    @Override
+    public void visit(While s) {
+      int w = node(WHILE, 2);
+      encode(w, 0, s.condition);
+      encode(w, 1, s.body);
+      done(w);
+    }
+
+    // types are codes, not nodes
+    @Override
+    public void visit(Type.Boolean t) {
+    }
+
+    @Override
+    public void visit(Type.ClassType t) {
+    }
+
+    @Override
+    public void visit(Type.Int t) {
+    }
+
+    @Override
+    public void visit(Type.IntArray t) {
+    }
+
+    // dec
+    @Override
+    public void visit(Dec.DecSingle d) {
+      int o = node(DEC, 2);
+      set(o, 0, typeCode(d.type));
+      set(o, 1, sym(d.id));
+      n = o;
+    }
+
+    // method
+    @Override
+    public void visit(MethodSingle m) {
+      int o = node(METHOD, 6);
+      set(o, 0, typeCode(m.retType));
+      set(o, 1, sym(m.id));
+      set(o, 2, list(m.formals));
+      then(() -> {
+        set(o, 3, list(m.locals));
+        then(() -> set(o, 4, list(m.stms)));
+        then(() -> encode(o, 5, m.retExp));
+      });
+      done(o);
+    }
+
+    // class
+    @Override
+    public void visit(ClassSingle c) {
+      int o = node(CLASS, 4);
+      set(o, 0, sym(c.id));
+      set(o, 1, sym(c.extendss));
+      set(o, 2, list(c.decs));
+      then(() -> set(o, 3, list(c.methods)));
+      done(o);
+    }
+
+    // main class
+    @Override
+    public void visit(MainClassSingle c) {
+      int o = node(MAIN_CLASS, 3);
+      set(o, 0, sym(c.id));
+      set(o, 1, sym(c.arg));
+      encode(o, 2, c.stm);
+      done(o);
+    }
+
+    // program
+    @Override
+    public void visit(ProgramSingle p) {
+      int o = node(PROGRAM, 2);
+      encode(o, 0, p.mainClass);
+      then(() -> set(o, 1, list(p.classes)));
+      done(o);
+    }
+  }
+
+  // /////////////////////////////////////////////////////
+  // the tree
+
+  // Rebuild the tree of this program, with all its annotations.
+  public Program.T decode() {
+    Program.T[] tree = new Program.T[1];
+    new Decoder().program(p -> tree[0] = p);
+    return tree[0];
+  }
+
+  // Builds the tree bottom-up: each node is decoded in a step of its
+  // own, which schedules its children, and passes the node it builds
+  // from them on to its continuation "k", in another step.
+  private class Decoder {
+    private final Trampoline steps = new Trampoline();
+
+    private void then(Runnable step) {
+      steps.then(step);
+    }
+
+    private <X> void ret(Consumer<X> k, X x) {
+      then(() -> k.accept(x));
+    }
+
+    void program(Consumer<Program.T> k) {
+      then(() -> mainClass(field(0, 0), m -> classes(field(0, 1),
+          cs -> ret(k, new ProgramSingle(m, cs)))));
+    }
+
+    private void mainClass(int n, Consumer<MainClass.T> k) {
+      stm(field(n, 2), s -> ret(k, new MainClassSingle(symbol(field(n, 0)),
+          symbol(field(n, 1)), s)));
+    }
+
+    private void classes(int l, Consumer<Seq<Class.T>> k) {
+      Seq.Builder<Class.T> b = new Seq.Builder<>();
+      for (int i = 0; i < length(l); i++) {
+        int n = field(l, i);
+        methods(field(n, 3), ms -> b.add(new ClassSingle(symbol(field(n, 0)),
+            symbol(field(n, 1)), decs(field(n, 2)), ms)));
+      }
+      then(() -> k.accept(b.build()));
+    }
+
+    private void methods(int l, Consumer<Seq<Method.T>> k) {
+      Seq.Builder<Method.T> b = new Seq.Builder<>();
+      for (int i = 0; i < length(l); i++) {
+        int n = field(l, i);
+        stms(field(n, 4), ss -> exp(field(n, 5),
+            e -> b.add(new MethodSingle(type(field(n, 0)), symbol(field(n, 1)),
+                decs(field(n, 2)), decs(field(n, 3)), ss, e))));
+      }
+      then(() -> k.accept(b.build()));
+    }
+
+    private void stms(int l, Consumer<Seq<Stm.T>> k) {
+      Seq.Builder<Stm.T> b = new Seq.Builder<>();
+      for (int i = 0; i < length(l); i++)
+        stm(field(l, i), b::add);
+      then(() -> k.accept(b.build()));
+    }
+
+    private void exps(int l, Consumer<Seq<Exp.T>> k) {
+      Seq.Builder<Exp.T> b = new Seq.Builder<>();
+      for (int i = 0; i < length(l); i++)
+        exp(field(l, i), b::add);
+      then(() -> k.accept(b.build()));
+    }
+
+    private void stm(int n, Consumer<Stm.T> k) {
+      then(() -> {
+        switch (tag(n)) {
+          case ASSIGN:
+            exp(field(n, 1), e -> {
+              Assign s = new Assign(symbol(field(n, 0)), e);
+              s.type = type(field(n, 2));
+              ret(k, s);
+            });
+            break;
+          case ASSIGN_ARRAY:
+            exp(field(n, 1), i -> exp(field(n, 2),
+                e -> ret(k, new AssignArray(symbol(field(n, 0)), i, e))));
+            break;
+          case BLOCK:
+            stms(field(n, 0), ss -> ret(k, new Block(ss)));
+            break;
+          case IF:
+            exp(field(n, 0), c -> stm(field(n, 1), t -> stm(field(n, 2),
+                e -> ret(k, new If(c, t, e)))));
+            break;
+          case PRINT:
+            exp(field(n, 0), e -> ret(k, new Print(e)));
+            break;
+          case WHILE:
+            exp(field(n, 0), c -> stm(field(n, 1),
+                b -> ret(k, new While(c, b))));
+            break;
+          default:
+            throw new IllegalStateException("not a statement: " + tag(n));
+        }
+      });
+    }
+
+    private void binary(int n, BiFunction<Exp.T, Exp.T, Exp.T> make,
+                        Consumer<Exp.T> k) {
+      exp(field(n, 0), l -> exp(field(n, 1), r -> ret(k, make.apply(l, r))));
+    }
+
+    private void unary(int n, Function<Exp.T, Exp.T> make, Consumer<Exp.T> k) {
+      exp(field(n, 0), e -> ret(k, make.apply(e)));
+    }
+
+    private void exp(int n, Consumer<Exp.T> k) {
+      then(() -> {
+        switch (tag(n)) {
+          case ADD:
+            binary(n, Add::new, k);
+            break;
+          case AND:
+            binary(n, And::new, k);
+            break;
+          case ARRAY_SELECT:
+            binary(n, ArraySelect::new, k);
+            break;
+          case CALL:
+            exp(field(n, 0), o -> exps(field(n, 2), args -> {
+              Call e = new Call(o, symbol(field(n, 1)), args);
+              e.type = symbol(field(n, 3));
+              e.at = types(field(n, 4));
+              e.rt = type(field(n, 5));
+              ret(k, e);
+            }));
+            break;
+          case FALSE:
+            ret(k, new False());
+            break;
+          case ID:
+            ret(k, new Id(symbol(field(n, 0)), type(field(n, 1)),
+                field(n, 2) != 0));
+            break;
+          case LENGTH:
+            unary(n, Length::new, k);
+            break;
+          case LT:
+            binary(n, Lt::new, k);
+            break;
+          case NEW_INT_ARRAY:
+            unary(n, NewIntArray::new, k);
+            break;
+          case NEW_OBJECT:
+            ret(k, new NewObject(symbol(field(n, 0))));
+            break;
+          case NOT:
+            unary(n, Not::new, k);
+            break;
+          case NUM:
+            ret(k, new Num(field(n, 0)));
+            break;
+          case SUB:
+            binary(n, Sub::new, k);
+            break;
+          case THIS:
+            ret(k, new This());
+            break;
+          case TIMES:
+            binary(n, Times::new, k);
+            break;
+          case TRUE:
+            ret(k, new True());
+            break;
+          default:
+            throw new IllegalStateException("not an expression: " + tag(n));
+        }
+      });
+    }
+  }
+
+  private Seq<Dec.T> decs(int l) {
+    Seq.Builder<Dec.T> b = new Seq.Builder<>();
+    for (int i = 0; i < length(l); i++) {
+      int n = field(l, i);
+      b.add(new Dec.DecSingle(type(field(n, 0)), symbol(field(n, 1))));
+    }
+    return b.build();
+  }
+
+  private Seq<Type.T> types(int l) {
+    if (length(l) == NONE)
+      return null;
+    Seq.Builder<Type.T> b = new Seq.Builder<>();
+    for (int i = 0; i < length(l); i++)
+      b.add(type(field(l, i)));
+    return b.build();
+  }
+
+  // Copy the annotations of "tree", which has the shape of this
+  // program (it was decoded from it), back into the slots. The order
+  // does not matter, so the nodes still to annotate are simply kept
+  // on the stack of a "Trampoline".
+  public void annotate(Program.T tree) {
+    Trampoline steps = new Trampoline();
+    ProgramSingle p = (ProgramSingle) tree;
+    steps.then(() -> {
+      annotateStm(steps, field(field(0, 0), 2),
+          ((MainClassSingle) p.mainClass).stm);
+      int classes = field(0, 1);
+      for (int i = 0; i < length(classes); i++) {
+        int c = field(classes, i);
+        ClassSingle cc = (ClassSingle) p.classes.get(i);
+        int methods = field(c, 3);
+        for (int j = 0; j < length(methods); j++)
+          annotateMethod(steps, field(methods, j),
+              (MethodSingle) cc.methods.get(j));
+      }
+    });
+    index = null;
+  }
+
+  private void annotateMethod(Trampoline steps, int n, MethodSingle m) {
+    int stms = field(n, 4);
+    for (int i = 0; i < length(stms); i++)
+      annotateStm(steps, field(stms, i), m.stms.get(i));
+    annotateExp(steps, field(n, 5), m.retExp);
+  }
+
+  private void annotateStm(Trampoline steps, int n, Stm.T s) {
+    steps.then(() -> {
+      switch (tag(n)) {
+        case ASSIGN:
+          set(n, 2, typeCode(((Assign) s).type));
+          annotateExp(steps, field(n, 1), ((Assign) s).exp);
+          break;
+        case ASSIGN_ARRAY:
+          annotateExp(steps, field(n, 1), ((AssignArray) s).index);
+          annotateExp(steps, field(n, 2), ((AssignArray) s).exp);
+          break;
+        case BLOCK: {
+          int l = field(n, 0);
+          for (int i = 0; i < length(l); i++)
+            annotateStm(steps, field(l, i), ((Block) s).stms.get(i));
+          break;
+        }
+        case IF:
+          annotateExp(steps, field(n, 0), ((If) s).condition);
+          annotateStm(steps, field(n, 1), ((If) s).thenn);
+          annotateStm(steps, field(n, 2), ((If) s).elsee);
+          break;
+        case PRINT:
+          annotateExp(steps, field(n, 0), ((Print) s).exp);
+          break;
+        case WHILE:
+          annotateExp(steps, field(n, 0), ((While) s).condition);
+          annotateStm(steps, field(n, 1), ((While) s).body);
+          break;
+        default:
+          throw new IllegalStateException("not a statement: " + tag(n));
+      }
+    });
+  }
+
+  private void annotateExp(Trampoline steps, int n, Exp.T e) {
+    steps.then(() -> {
+      switch (tag(n)) {
+        case ADD:
+        case AND:
+        case ARRAY_SELECT:
+        case LT:
+        case SUB:
+        case TIMES: {
+          Exp.T[] kids = children(e);
+          annotateExp(steps, field(n, 0), kids[0]);
+          annotateExp(steps, field(n, 1), kids[1]);
+          break;
+        }
+        case LENGTH:
+        case NEW_INT_ARRAY:
+        case NOT:
+          annotateExp(steps, field(n, 0), children(e)[0]);
+          break;
+        case CALL: {
+          Call c = (Call) e;
+          annotateExp(steps, field(n, 0), c.exp);
+          int args = field(n, 2);
+          for (int i = 0; i < length(args); i++)
+            annotateExp(steps, field(args, i), c.args.get(i));
+          steps.then(() -> {
+            set(n, 3, sym(c.type));
+            setTypes(field(n, 4), c.at);
+            set(n, 5, typeCode(c.rt));
+          });
+          break;
+        }
+        case ID:
+          set(n, 1, typeCode(((Id) e).type));
+          set(n, 2, ((Id) e).isField ? 1 : 0);
+          break;
+        default:
+          break;
+      }
+    });
+  }
+
+  private static Exp.T[] children(Exp.T e) {
+    if (e instanceof Add)
+      return new Exp.T[]{((Add) e).left, ((Add) e).right};
+    if (e instanceof And)
+      return new Exp.T[]{((And) e).left, ((And) e).right};
+    if (e instanceof ArraySelect)
+      return new Exp.T[]{((ArraySelect) e).array, ((ArraySelect) e).index};
+    if (e instanceof Lt)
+      return new Exp.T[]{((Lt) e).left, ((Lt) e).right};
+    if (e instanceof Sub)
+      return new Exp.T[]{((Sub) e).left, ((Sub) e).right};
+    if (e instanceof Times)
+      return new Exp.T[]{((Times) e).left, ((Times) e).right};
+    if (e instanceof Length)
+      return new Exp.T[]{((Length) e).array};
+    if (e instanceof NewIntArray)
+      return new Exp.T[]{((NewIntArray) e).exp};
+    return new Exp.T[]{((Not) e).exp};
+  }
+
+  // the binary form: a magic number, the version of the format, the
+  // arena and the names of the symbols
+  private static final int MAGIC = 0x54494741; // "TIGA"
+  public static final int VERSION = 2;
+
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(size);
+    for (int i = 0; i < size; i++)
+      out.writeInt(data[i]);
+    out.writeInt(nsymbols);
+    for (int i = 0; i < nsymbols; i++)
+      out.writeUTF(symbols[i].toString());
+  }
+
+  // Read a program written by "write", from an input of "bytes"
+  // bytes. Throws "IOException" if the input is not one, was written
+  // in another version, or was cut short or damaged: the counts are
+  // checked against the length of the input before anything is
+  // allocated, and the arena is checked before it is returned.
+  public static Flat read(DataInputStream in, long bytes) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION)
+      throw new IOException("not a flat AST of version " + VERSION);
+    int size = in.readInt();
+    // the header, the arena and the symbol count
+    if (size < 1 || 4L * size > bytes - 16)
+      throw new IOException("bad arena size: " + size);
+    Flat flat = new Flat(size);
+    for (int i = 0; i < size; i++)
+      flat.data[i] = in.readInt();
+    flat.size = size;
+    int nsymbols = in.readInt();
+    // a symbol takes two bytes at least
+    if (nsymbols < 0 || 2L * nsymbols > bytes - 16 - 4L * size)
+      throw new IOException("bad symbol count: " + nsymbols);
+    flat.symbols = new Symbol[Math.max(nsymbols, 16)];
+    for (int i = 0; i < nsymbols; i++)
+      flat.symbols[i] = Symbol.symbol(in.readUTF());
+    flat.nsymbols = nsymbols;
+    flat.check();
+    return flat;
+  }
+
+  // what "check" expects at an offset, besides a node of a given tag
+  private static final int ANY_STM = -10;
+  private static final int ANY_EXP = -11;
+
+  // Check that the arena is a well-formed program, so that decoding it
+  // cannot fail: every node has a known tag and fits in the arena,
+  // every symbol and type is in range, and every node and list that a
+  // node refers to comes after it. The nodes still to check are kept
+  // on a work list; as offsets only increase along it, the check
+  // terminates, and as a program has fewer nodes than ints, a check
+  // that visits more than that is on a damaged arena.
+  private void check() throws IOException {
+    Work todo = new Work();
+    todo.push(-1, 0, PROGRAM);
+    long visits = 0;
+    while (todo.top > 0) {
+      int kind = todo.items[--todo.top];
+      int n = todo.items[--todo.top];
+      if (++visits > size)
+        throw damaged(n);
+      switch (checkTag(n, kind)) {
+        case PROGRAM:
+          todo.push(n, field(n, 0), MAIN_CLASS);
+          list(todo, n, field(n, 1), CLASS);
+          break;
+        case MAIN_CLASS:
+          checkSymbol(n, field(n, 0), false);
+          checkSymbol(n, field(n, 1), false);
+          todo.push(n, field(n, 2), ANY_STM);
+          break;
+        case CLASS:
+          checkSymbol(n, field(n, 0), false);
+          checkSymbol(n, field(n, 1), true);
+          list(todo, n, field(n, 2), DEC);
+          list(todo, n, field(n, 3), METHOD);
+          break;
+        case METHOD:
+          checkType(n, field(n, 0), false);
+          checkSymbol(n, field(n, 1), false);
+          list(todo, n, field(n, 2), DEC);
+          list(todo, n, field(n, 3), DEC);
+          list(todo, n, field(n, 4), ANY_STM);
+          todo.push(n, field(n, 5), ANY_EXP);
+          break;
+        case DEC:
+          checkType(n, field(n, 0), false);
+          checkSymbol(n, field(n, 1), false);
+          break;
+        case ASSIGN:
+          checkSymbol(n, field(n, 0), false);
+          checkType(n, field(n, 2), true);
+          todo.push(n, field(n, 1), ANY_EXP);
+          break;
+        case ASSIGN_ARRAY:
+          checkSymbol(n, field(n, 0), false);
+          todo.push(n, field(n, 1), ANY_EXP);
+          todo.push(n, field(n, 2), ANY_EXP);
+          break;
+        case BLOCK:
+          list(todo, n, field(n, 0), ANY_STM);
+          break;
+        case IF:
+          todo.push(n, field(n, 0), ANY_EXP);
+          todo.push(n, field(n, 1), ANY_STM);
+          todo.push(n, field(n, 2), ANY_STM);
+          break;
+        case WHILE:
+          todo.push(n, field(n, 0), ANY_EXP);
+          todo.push(n, field(n, 1), ANY_STM);
+          break;
+        case ADD:
+        case AND:
+        case ARRAY_SELECT:
+        case LT:
+        case SUB:
+        case TIMES:
+          todo.push(n, field(n, 0), ANY_EXP);
+          todo.push(n, field(n, 1), ANY_EXP);
+          break;
+        case PRINT:
+        case LENGTH:
+        case NEW_INT_ARRAY:
+        case NOT:
+          todo.push(n, field(n, 0), ANY_EXP);
+          break;
+        case CALL: {
+          todo.push(n, field(n, 0), ANY_EXP);
+          checkSymbol(n, field(n, 1), false);
+          int args = field(n, 2);
+          list(todo, n, args, ANY_EXP);
+          checkSymbol(n, field(n, 3), true);
+          // room for a type per argument, filled in or not
+          int at = field(n, 4);
+          checkList(n, at, length(args));
+          if (length(at) != NONE && length(at) != length(args))
+            throw damaged(n);
+          for (int i = 0; i < length(at); i++)
+            checkType(n, field(at, i), false);
+          checkType(n, field(n, 5), true);
+          break;
+        }
+        case ID:
+          checkSymbol(n, field(n, 0), false);
+          checkType(n, field(n, 1), true);
+          break;
+        case NEW_OBJECT:
+          checkSymbol(n, field(n, 0), false);
+          break;
+        default: // FALSE, NUM, THIS and TRUE
+          break;
+      }
+    }
+  }
+
+  // the nodes "check" has yet to check, each with what it should be
+  private final class Work {
+    int[] items = new int[64];
+    int top = 0;
+
+    // "ref", of "kind", is referred to by the node or list "from"
+    void push(int from, int ref, int kind) throws IOException {
+      if (ref <= from || ref >= size)
+        throw damaged(from);
+      if (top + 2 > items.length)
+        items = Arrays.copyOf(items, items.length * 2);
+      items[top++] = ref;
+      items[top++] = kind;
+    }
+  }
+
+  // the tag of node "n", which is expected to be of "kind", once it is
+  // known that all its fields are in the arena
+  private int checkTag(int n, int kind) throws IOException {
+    int tag = data[n];
+    boolean ok;
+    switch (kind) {
+      case ANY_STM:
+        ok = tag >= ASSIGN && tag <= WHILE;
+        break;
+      case ANY_EXP:
+        ok = tag >= ADD && tag <= TRUE;
+        break;
+      default:
+        ok = tag == kind;
+        break;
+    }
+    if (!ok || n + 1 + fields(tag) > size)
+      throw damaged(n);
+    return tag;
+  }
+
+  // the number of fields of a node with "tag"
+  private static int fields(int tag) {
+    switch (tag) {
+      case CALL:
+      case METHOD:
+        return 6;
+      case CLASS:
+        return 4;
+      case MAIN_CLASS:
+      case ASSIGN:
+      case ASSIGN_ARRAY:
+      case IF:
+      case ID:
+        return 3;
+      case PROGRAM:
+      case DEC:
+      case WHILE:
+      case ADD:
+      case AND:
+      case ARRAY_SELECT:
+      case LT:
+      case SUB:
+      case TIMES:
+        return 2;
+      case BLOCK:
+      case PRINT:
+      case LENGTH:
+      case NEW_INT_ARRAY:
+      case NEW_OBJECT:
+      case NOT:
+      case NUM:
+        return 1;
+      default: // FALSE, THIS and TRUE
+        return 0;
+    }
+  }
+
+  // check the list "l" of node "n", with room for "capacity" elements
+  private void checkList(int n, int l, int capacity) throws IOException {
+    if (l <= n || l >= size || capacity < 0 || l + 1L + capacity > size)
+      throw damaged(n);
+  }
+
+  // check the list "l" of node "n", and its elements of "kind" later
+  private void list(Work todo, int n, int l, int kind) throws IOException {
+    checkList(n, l, l > n && l < size ? length(l) : 0);
+    for (int i = 0; i < length(l); i++)
+      todo.push(l, field(l, i), kind);
+  }
+
+  private void checkSymbol(int n, int s, boolean optional) throws IOException {
+    if (s >= nsymbols || s < (optional ? NONE : 0))
+      throw damaged(n);
+  }
+
+  private void checkType(int n, int t, boolean optional) throws IOException {
+    if (t >= nsymbols || t < INT_ARRAY || (t == NONE && !optional))
+      throw damaged(n);
+  }
+
+  private static IOException damaged(int n) {
+    return new IOException("damaged flat AST at node " + n);
+  }
+
+  // /////////////////////////////////////////////////////
+  // the visitor adapter
+
+  // Run "v" on the frame of this program, whose methods decode their
+  // bodies as they are visited, and keep what "v" recorded on them.
+  @Override
+  public void accept(Visitor v) {
+    Walk walk = new Walk();
+    walk.program().accept(v);
+    walk.finish();
+  }
+
+  // One walk of the program, and the method body each visitor is in.
+  // A visitor walks the methods one after the other, so its body is
+  // done with when it enters the next method, or when the walk ends.
+  // The parallel elaborator walks with a visitor per task: the bodies
+  // are then decoded and annotated one at a time, under the lock of
+  // the arena, as annotating may intern a symbol.
+  private class Walk {
+    private final Map<Visitor, Body> bodies = new IdentityHashMap<>();
+    private MainClassSingle main;
+
+    Program.T program() {
+      Decoder d = new Decoder();
+      d.then(() -> d.mainClass(field(0, 0), m -> main = (MainClassSingle) m));
+      Seq.Builder<Class.T> classes = new Seq.Builder<>();
+      int l = field(0, 1);
+      for (int i = 0; i < length(l); i++) {
+        int n = field(l, i);
+        Seq.Builder<Method.T> methods = new Seq.Builder<>();
+        int ms = field(n, 3);
+        for (int j = 0; j < length(ms); j++)
+          methods.add(new Body(field(ms, j)));
+        classes.add(new ClassSingle(symbol(field(n, 0)), symbol(field(n, 1)),
+            decs(field(n, 2)), methods.build()));
+      }
+      return new ProgramSingle(main, classes.build());
+    }
+
+    void finish() {
+      synchronized (Flat.this) {
+        Trampoline steps = new Trampoline();
+        steps.then(() -> annotateStm(steps, field(field(0, 0), 2), main.stm));
+      }
+      for (Body b : bodies.values())
+        b.close();
+      index = null;
+    }
+
+    // A method whose body is in the arena, at node "n", but while a
+    // visitor is in it.
+    private class Body extends MethodSingle {
+      private final int n;
+
+      Body(int n) {
+        super(type(field(n, 0)), symbol(field(n, 1)), decs(field(n, 2)),
+            decs(field(n, 3)), null, null);
+        this.n = n;
+      }
+
+      private void open() {
+        if (stms != null)
+          return;
+        // another body may be closing, and interning symbols
+        synchronized (Flat.this) {
+          Decoder d = new Decoder();
+          d.then(() -> d.stms(field(n, 4), ss -> d.exp(field(n, 5), e -> {
+            stms = ss;
+            retExp = e;
+          })));
+        }
+      }
+
+      private void close() {
+        if (stms == null)
+          return;
+        synchronized (Flat.this) {
+          Trampoline steps = new Trampoline();
+          steps.then(() -> annotateMethod(steps, n, this));
+        }
+        stms = null;
+        retExp = null;
+      }
+
+      @Override
+      public void accept(Visitor v) {
+        Body last;
+        synchronized (bodies) {
+          last = bodies.put(v, this);
+        }
+        if (last != null && last != this)
+          last.close();
+        open();
+        v.visit(this);
+      }
+    }
+  }
+}
@@ -9,12 +9,35 @@ import ast.Ast.Type.Boolean;
 import ast.Ast.Type.ClassType;
 import ast.Ast.Type.Int;
 import ast.Ast.Type.IntArray;
+import util.Trampoline;
 
+import java.io.PrintStream;
+
+// The nodes are visited on the explicit stack of a "Trampoline", so
+// that deeply nested programs do not overflow the Java stack: every
+// visit schedules the children, and the printing that follows them,
+// with "walk" and "then".
 public class PrettyPrintVisitor implements Visitor {
   private int indentLevel;
+  private final Trampoline steps;
+  private final PrintStream out;
 
   public PrettyPrintVisitor() {
+    this(System.out);
+  }
+
+  public PrettyPrintVisitor(PrintStream out) {
     this.indentLevel = 4;
+    this.steps = new Trampoline();
+    this.out = out;
+  }
+
+  private void walk(Acceptable node) {
+    this.steps.then(() -> node.accept(this));
+  }
+
+  private void then(Runnable step) {
+    this.steps.then(step);
   }
 
   private void indent() {
@@ -32,11 +55,11 @@ public class PrettyPrintVisitor implements Visitor {
   }
 
   private void sayln(String s) {
-    System.out.println(s);
+    out.println(s);
   }
 
   private void say(String s) {
-    System.out.print(s);
+    out.print(s);
   }
 
   // /////////////////////////////////////////////////////
@@ -46,36 +69,36 @@ public class PrettyPrintVisitor implements Visitor {
     // Lab2, exercise4: filling in missing code.
     // Similar for other methods with empty bodies.
     // Your code here:
-    e.left.accept(this);
-    this.say(" + ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" + "));
+    walk(e.right);
   }
 
   @Override
   public void visit(And e) {
-    e.left.accept(this);
-    this.say(" & ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" & "));
+    walk(e.right);
   }
 
   @Override
   public void visit(ArraySelect e) {
-    e.array.accept(this);
-    e.index.accept(this);
+    walk(e.array);
+    walk(e.index);
   }
 
   @Override
   public void visit(Call e) {
-    e.exp.accept(this);
-    this.say("." + e.id + "(");
+    walk(e.exp);
+    then(() -> this.say("." + e.id + "("));
     for (int i = 0; i < e.args.size(); i++) {
       Exp.T x = e.args.get(i);
-      x.accept(this);
+      walk(x);
       if (i != e.args.size() - 1) {
-        this.say(", ");
+        then(() -> this.say(", "));
       }
     }
-    this.say(")");
+    then(() -> this.say(")"));
     return;
   }
 
@@ -86,7 +109,7 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Id e) {
-    this.say(e.id);
+    this.say(e.id.toString());
   }
 
   @Override
@@ -96,17 +119,17 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Lt e) {
-    e.left.accept(this);
-    this.say(" < ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" < "));
+    walk(e.right);
     return;
   }
 
   @Override
   public void visit(NewIntArray e) {
     this.say("new int[");
-    e.exp.accept(this);
-    this.say("]");
+    walk(e.exp);
+    then(() -> this.say("]"));
   }
 
   @Override
@@ -118,20 +141,20 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(Not e) {
     this.say("!");
-    e.exp.accept(this);
+    walk(e.exp);
   }
 
   @Override
   public void visit(Num e) {
-    System.out.print(e.num);
+    out.print(e.num);
     return;
   }
 
   @Override
   public void visit(Sub e) {
-    e.left.accept(this);
-    this.say(" - ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" - "));
+    walk(e.right);
     return;
   }
 
@@ -142,9 +165,9 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Times e) {
-    e.left.accept(this);
-    this.say(" * ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" * "));
+    walk(e.right);
     return;
   }
 
@@ -158,23 +181,23 @@ public class PrettyPrintVisitor implements Visitor {
   public void visit(Assign s) {
     this.printSpaces();
     this.say(s.id + " = ");
-    s.exp.accept(this);
-    this.sayln(";");
+    walk(s.exp);
+    then(() -> this.sayln(";"));
     return;
   }
 
   @Override
   public void visit(AssignArray s) {
     this.say(s.id + "[");
-    s.index.accept(this);
-    this.say("] = ");
-    s.exp.accept(this);
+    walk(s.index);
+    then(() -> this.say("] = "));
+    walk(s.exp);
   }
 
   @Override
   public void visit(Block s) {
     for (Stm.T stm : s.stms) {
-      stm.accept(this);
+      walk(stm);
     }
   }
 
@@ -182,18 +205,24 @@ public class PrettyPrintVisitor implements Visitor {
   public void visit(If s) {
     this.printSpaces();
     this.say("if (");
-    s.condition.accept(this);
-    this.sayln(")");
-    this.indent();
-    s.thenn.accept(this);
-    this.unIndent();
-    this.sayln("");
-    this.printSpaces();
-    this.sayln("else");
-    this.indent();
-    s.elsee.accept(this);
-    this.sayln("");
-    this.unIndent();
+    walk(s.condition);
+    then(() -> {
+      this.sayln(")");
+      this.indent();
+    });
+    walk(s.thenn);
+    then(() -> {
+      this.unIndent();
+      this.sayln("");
+      this.printSpaces();
+      this.sayln("else");
+      this.indent();
+    });
+    walk(s.elsee);
+    then(() -> {
+      this.sayln("");
+      this.unIndent();
+    });
     return;
   }
 
@@ -201,8 +230,8 @@ public class PrettyPrintVisitor implements Visitor {
   public void visit(Print s) {
     this.printSpaces();
     this.say("System.out.println (");
-    s.exp.accept(this);
-    this.sayln(");");
+    walk(s.exp);
+    then(() -> this.sayln(");"));
     return;
   }
 
@@ -210,15 +239,19 @@ public class PrettyPrintVisitor implements Visitor {
   public void visit(While s) {
     this.printSpaces();
     this.say("while (");
-    s.condition.accept(this);
-    this.sayln(")");
-    this.printSpaces();
-    this.sayln("{");
-    this.indent();
-    s.body.accept(this);
-    this.unIndent();
-    this.printSpaces();
-    this.sayln("}");
+    walk(s.condition);
+    then(() -> {
+      this.sayln(")");
+      this.printSpaces();
+      this.sayln("{");
+      this.indent();
+    });
+    walk(s.body);
+    then(() -> {
+      this.unIndent();
+      this.printSpaces();
+      this.sayln("}");
+    });
   }
 
   // type
@@ -229,7 +262,7 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(ClassType t) {
-    this.say(t.id);
+    this.say(t.id.toString());
   }
 
   @Override
@@ -275,11 +308,13 @@ public class PrettyPrintVisitor implements Visitor {
     }
     this.sayln("");
     for (Stm.T s : m.stms)
-      s.accept(this);
-    this.say("    return ");
-    m.retExp.accept(this);
-    this.sayln(";");
-    this.sayln("  }");
+      walk(s);
+    then(() -> this.say("    return "));
+    walk(m.retExp);
+    then(() -> {
+      this.sayln(";");
+      this.sayln("  }");
+    });
     return;
   }
 
@@ -302,8 +337,8 @@ public class PrettyPrintVisitor implements Visitor {
       this.sayln(dec.id + ";");
     }
     for (Method.T mthd : c.methods)
-      mthd.accept(this);
-    this.sayln("}");
+      walk(mthd);
+    then(() -> this.sayln("}"));
     return;
   }
 
@@ -314,20 +349,22 @@ public class PrettyPrintVisitor implements Visitor {
     this.sayln("{");
     this.sayln("  public static void main (String [] " + c.arg + ")");
     this.sayln("  {");
-    c.stm.accept(this);
-    this.sayln("  }");
-    this.sayln("}");
+    walk(c.stm);
+    then(() -> {
+      this.sayln("  }");
+      this.sayln("}");
+    });
     return;
   }
 
   // program
   @Override
   public void visit(Program.ProgramSingle p) {
-    p.mainClass.accept(this);
-    this.sayln("");
+    walk(p.mainClass);
+    then(() -> this.sayln(""));
     for (Ast.Class.T classs : p.classes) {
-      classs.accept(this);
+      walk(classs);
     }
-    System.out.println("\n\n");
+    then(() -> out.println("\n\n"));
   }
 }
@@ -1,5 +1,7 @@
 package codegen.C;
 
+import util.Symbol;
+
 import java.util.ArrayList;
 import java.util.LinkedList;
 
@@ -14,15 +16,15 @@ public class Ast {
     }
 
     public static class ClassType extends T {
-      public String id;
+      public Symbol id;
 
-      public ClassType(String id) {
+      public ClassType(Symbol id) {
         this.id = id;
       }
 
       @Override
       public String toString() {
-        return this.id;
+        return this.id.toString();
       }
 
       @Override
@@ -81,9 +83,9 @@ public class Ast {
 
     public static class DecSingle extends T {
       public Type.T type;
-      public String id;
+      public Symbol id;
 
-      public DecSingle(Type.T type, String id) {
+      public DecSingle(Type.T type, Symbol id) {
         this.type = type;
         this.id = id;
       }
@@ -151,12 +153,12 @@ public class Ast {
     }
 
     public static class Call extends T {
-      public String assign;
+      public Symbol assign;
       public T exp;
-      public String id;
+      public Symbol id;
       public LinkedList<T> args;
 
-      public Call(String assign, T exp, String id, LinkedList<T> args) {
+      public Call(Symbol assign, T exp, Symbol id, LinkedList<T> args) {
         this.assign = assign;
         this.exp = exp;
         this.id = id;
@@ -171,9 +173,9 @@ public class Ast {
     }
 
     public static class Id extends T {
-      public String id;
+      public Symbol id;
 
-      public Id(String id) {
+      public Id(Symbol id) {
         this.id = id;
       }
 
@@ -232,12 +234,12 @@ public class Ast {
     }
 
     public static class NewObject extends T {
-      public String id;
+      public Symbol id;
       // Lab4, exercise 1: this field
       // is used to name the allocation.
       public String name;
 
-      public NewObject(String id) {
+      public NewObject(Symbol id) {
         this.id = id;
       }
 
@@ -328,10 +330,10 @@ public class Ast {
     }
 
     public static class Assign extends T {
-      public String id;
+      public Symbol id;
       public Exp.T exp;
 
-      public Assign(String id, Exp.T exp) {
+      public Assign(Symbol id, Exp.T exp) {
         this.id = id;
         this.exp = exp;
       }
@@ -343,11 +345,11 @@ public class Ast {
     }
 
     public static class AssignArray extends T {
-      public String id;
+      public Symbol id;
       public Exp.T index;
       public Exp.T exp;
 
-      public AssignArray(String id, Exp.T index, Exp.T exp) {
+      public AssignArray(Symbol id, Exp.T index, Exp.T exp) {
         this.id = id;
         this.index = index;
         this.exp = exp;
@@ -426,10 +428,10 @@ public class Ast {
     }
 
     public static class ClassSingle extends T {
-      public String id;
+      public Symbol id;
       public LinkedList<codegen.C.Tuple> decs;
 
-      public ClassSingle(String id, LinkedList<codegen.C.Tuple> decs) {
+      public ClassSingle(Symbol id, LinkedList<codegen.C.Tuple> decs) {
         this.id = id;
         this.decs = decs;
       }
@@ -450,10 +452,10 @@ public class Ast {
     }
 
     public static class VtableSingle extends T {
-      public String id; // name of the class
+      public Symbol id; // name of the class
       public ArrayList<codegen.C.Ftuple> ms; // all methods
 
-      public VtableSingle(String id, ArrayList<codegen.C.Ftuple> ms) {
+      public VtableSingle(Symbol id, ArrayList<codegen.C.Ftuple> ms) {
         this.id = id;
         this.ms = ms;
       }
@@ -474,14 +476,14 @@ public class Ast {
 
     public static class MethodSingle extends T {
       public Type.T retType;
-      public String classId;
-      public String id;
+      public Symbol classId;
+      public Symbol id;
       public LinkedList<Dec.T> formals;
       public LinkedList<Dec.T> locals;
       public LinkedList<Stm.T> stms;
       public Exp.T retExp;
 
-      public MethodSingle(Type.T retType, String classId, String id,
+      public MethodSingle(Type.T retType, Symbol classId, Symbol id,
                           LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
                           LinkedList<Stm.T> stms, Exp.T retExp) {
         this.retType = retType;
@@ -1,46 +1,27 @@
 package codegen.C;
 
-import codegen.C.Ast.Dec;
-import codegen.C.Ast.Type;
+import util.Symbol;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
 
 public class ClassBinding {
-  public String extendss; // null for non-existing extends
-  public boolean visited; // whether or not this class has been visited
+  public Symbol extendss; // null for non-existing extends
   public LinkedList<Tuple> fields; // all fields
   public ArrayList<Ftuple> methods; // all methods
 
-  public ClassBinding(String extendss) {
+  public ClassBinding(Symbol extendss) {
     this.extendss = extendss;
-    this.visited = false;
     this.fields = new LinkedList<Tuple>();
     this.methods = new ArrayList<Ftuple>();
   }
 
-  // put a single field
-  public void put(String c, Type.T type, String var) {
-    this.fields.add(new Tuple(c, type, var));
-  }
-
   public void put(Tuple t) {
     this.fields.add(t);
   }
 
-  public void update(LinkedList<Tuple> fs) {
-    this.fields = fs;
-  }
-
-  public void update(ArrayList<Ftuple> ms) {
-    this.methods = ms;
-  }
-
-  public void putm(String c, Type.T ret,
-                   LinkedList<Dec.T> args, String mthd) {
-    Ftuple t = new Ftuple(c, ret, args, mthd);
+  public void putm(Ftuple t) {
     this.methods.add(t);
-    return;
   }
 
   @Override
@@ -12,14 +12,16 @@ import codegen.C.Ast.Type.ClassType;
 import codegen.C.Ast.Type.Int;
 import codegen.C.Ast.Type.IntArray;
 import codegen.C.Ast.Vtable.VtableSingle;
-import control.Control;
+import control.CompilationContext;
 import util.Bug;
+import util.Symbol;
+import util.Trampoline;
 
 import java.util.*;
 
 class MethodLocals {
 
-  private Set<String> locals;
+  private Set<Symbol> locals;
 
   MethodLocals(MethodSingle method) {
 
@@ -37,20 +39,20 @@ class MethodLocals {
     }
   }
 
-  boolean contains(String local) {
+  boolean contains(Symbol local) {
     return locals.contains(local);
   }
 }
 
 class MethodInfo {
-  private Map<String, Map<String, MethodLocals>> info;
+  private Map<Symbol, Map<Symbol, MethodLocals>> info;
 
   MethodInfo() {
     info = new HashMap<>();
   }
 
-  boolean contains(String className, String methodName, String var) {
-    Map<String, MethodLocals> locals = info.get(className);
+  boolean contains(Symbol className, Symbol methodName, Symbol var) {
+    Map<Symbol, MethodLocals> locals = info.get(className);
     if (locals != null) {
       MethodLocals m = locals.get(methodName);
       if (m != null) {
@@ -61,32 +63,46 @@ class MethodInfo {
   }
 
   void add(MethodSingle method) {
-    String className = method.classId;
-    String methodName = method.id;
+    Symbol className = method.classId;
+    Symbol methodName = method.id;
 
     if (!info.containsKey(className)) {
       info.put(className, new HashMap<>());
     }
 
-    Map<String, MethodLocals> mp = info.get(className);
+    Map<Symbol, MethodLocals> mp = info.get(className);
     mp.put(methodName, new MethodLocals(method));
   }
 
 }
 
+// The statements and expressions are visited on the explicit stack of
+// a "Trampoline", so that deeply nested programs do not overflow the
+// Java stack: a visit schedules its children, and the printing that
+// follows them, with "walk" and "then".
 public class PrettyPrintVisitor implements Visitor {
+  private final CompilationContext ctx;
+  private final Trampoline steps;
   private int indentLevel;
-  private java.io.BufferedWriter writer;
+  private util.Output output;
+  private java.io.Writer writer;
 
   private MethodInfo methodInfo;
-  private String className;
-  private String methodName;
-  private Map<String, Integer> localsSet;
-  private Map<String, List<Type.T>> classField;
+  private Symbol className;
+  private Symbol methodName;
+  private Map<Symbol, Integer> localsSet;
+  private Map<Symbol, List<Type.T>> classField;
 
 
   public PrettyPrintVisitor(TranslateVisitor visitor) {
+    this(visitor, util.Output.FILES);
+  }
+
+  public PrettyPrintVisitor(TranslateVisitor visitor, util.Output output) {
+    this.ctx = visitor.ctx;
+    this.steps = new Trampoline();
     this.indentLevel = 2;
+    this.output = output;
 
     this.methodInfo = new MethodInfo();
     for (Method.T method : visitor.methods) {
@@ -106,6 +122,14 @@ public class PrettyPrintVisitor implements Visitor {
     this.indentLevel -= 2;
   }
 
+  private void walk(Acceptable node) {
+    this.steps.then(() -> node.accept(this));
+  }
+
+  private void then(Runnable step) {
+    this.steps.then(step);
+  }
+
   private void printSpaces() {
     int i = this.indentLevel;
     while (i-- != 0)
@@ -114,24 +138,38 @@ public class PrettyPrintVisitor implements Visitor {
 
   private void sayln(String s) {
     say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    say("\n");
   }
 
   private void say(String s) {
     try {
       this.writer.write(s);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
     }
   }
 
-  private boolean verifyClassField(String var) {
+  private void open(String name) {
+    try {
+      this.writer = this.output.open(name);
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
+    }
+  }
+
+  private void close() {
+    try {
+      this.writer.close();
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
+    }
+  }
+
+  private static util.CompileError cannotWrite(java.io.IOException e) {
+    return new util.CompileError("cannot write the output: " + e, e);
+  }
+
+  private boolean verifyClassField(Symbol var) {
     if (className != null && methodName != null) {
       if (!methodInfo.contains(className, methodName, var)) {
         this.say("this->");
@@ -145,24 +183,24 @@ public class PrettyPrintVisitor implements Visitor {
   // expressions
   @Override
   public void visit(Add e) {
-    e.left.accept(this);
-    this.say(" + ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" + "));
+    walk(e.right);
   }
 
   @Override
   public void visit(And e) {
-    e.left.accept(this);
-    this.say(" && ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" && "));
+    walk(e.right);
   }
 
   @Override
   public void visit(ArraySelect e) {
-    e.array.accept(this);
-    this.say("[");
-    e.index.accept(this);
-    this.say("]");
+    walk(e.array);
+    then(() -> this.say("["));
+    walk(e.index);
+    then(() -> this.say("]"));
   }
 
   @Override
@@ -171,22 +209,24 @@ public class PrettyPrintVisitor implements Visitor {
     if (localsSet.containsKey(e.assign)) {
       assign = "frame." + e.assign;
     } else {
-      assign = e.assign;
+      assign = e.assign.toString();
     }
     this.say("(" + assign + "=");
-    e.exp.accept(this);
-    this.say(", ");
-    this.say(assign + "->vptr->" + e.id + "(" + assign);
+    walk(e.exp);
+    then(() -> {
+      this.say(", ");
+      this.say(assign + "->vptr->" + e.id + "(" + assign);
+    });
     int size = e.args.size();
     if (size == 0) {
-      this.say("))");
+      then(() -> this.say("))"));
       return;
     }
     for (Exp.T x : e.args) {
-      this.say(", ");
-      x.accept(this);
+      then(() -> this.say(", "));
+      walk(x);
     }
-    this.say("))");
+    then(() -> this.say("))"));
   }
 
   @Override
@@ -197,7 +237,7 @@ public class PrettyPrintVisitor implements Visitor {
       this.say("frame.");
     }
 
-    this.say(e.id);
+    this.say(e.id.toString());
   }
 
   @Override
@@ -207,16 +247,16 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Lt e) {
-    e.left.accept(this);
-    this.say(" < ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" < "));
+    walk(e.right);
   }
 
   @Override
   public void visit(NewIntArray e) {
     this.say("(int*)malloc(sizeof(int) * (");
-    e.exp.accept(this);
-    this.say("))");
+    walk(e.exp);
+    then(() -> this.say("))"));
   }
 
   @Override
@@ -228,8 +268,8 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(Not e) {
     this.say("!(");
-    e.exp.accept(this);
-    this.say(")");
+    walk(e.exp);
+    then(() -> this.say(")"));
   }
 
   @Override
@@ -239,9 +279,9 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Sub e) {
-    e.left.accept(this);
-    this.say(" - ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" - "));
+    walk(e.right);
   }
 
   @Override
@@ -251,9 +291,9 @@ public class PrettyPrintVisitor implements Visitor {
 
   @Override
   public void visit(Times e) {
-    e.left.accept(this);
-    this.say(" * ");
-    e.right.accept(this);
+    walk(e.left);
+    then(() -> this.say(" * "));
+    walk(e.right);
   }
 
   // statements
@@ -268,8 +308,8 @@ public class PrettyPrintVisitor implements Visitor {
 
     this.say(s.id + " = ");
 
-    s.exp.accept(this);
-    this.sayln(";");
+    walk(s.exp);
+    then(() -> this.sayln(";"));
   }
 
   @Override
@@ -282,10 +322,10 @@ public class PrettyPrintVisitor implements Visitor {
     }
     this.say(s.id + "[");
 
-    s.index.accept(this);
-    this.say("] = ");
-    s.exp.accept(this);
-    this.sayln(";");
+    walk(s.index);
+    then(() -> this.say("] = "));
+    walk(s.exp);
+    then(() -> this.sayln(";"));
   }
 
   @Override
@@ -294,48 +334,58 @@ public class PrettyPrintVisitor implements Visitor {
     this.sayln("{");
     this.indent();
     for (Stm.T stm : s.stms) {
-      stm.accept(this);
+      walk(stm);
     }
-    this.unIndent();
-    this.printSpaces();
-    this.sayln("}");
+    then(() -> {
+      this.unIndent();
+      this.printSpaces();
+      this.sayln("}");
+    });
   }
 
   @Override
   public void visit(If s) {
     this.printSpaces();
     this.say("if (");
-    s.condition.accept(this);
-    this.sayln(")");
-    this.indent();
-    s.thenn.accept(this);
-    this.unIndent();
-    this.sayln("");
-    this.printSpaces();
-    this.sayln("else");
-    this.indent();
-    s.elsee.accept(this);
-    this.sayln("");
-    this.unIndent();
+    walk(s.condition);
+    then(() -> {
+      this.sayln(")");
+      this.indent();
+    });
+    walk(s.thenn);
+    then(() -> {
+      this.unIndent();
+      this.sayln("");
+      this.printSpaces();
+      this.sayln("else");
+      this.indent();
+    });
+    walk(s.elsee);
+    then(() -> {
+      this.sayln("");
+      this.unIndent();
+    });
   }
 
   @Override
   public void visit(Print s) {
     this.printSpaces();
     this.say("System_out_println (");
-    s.exp.accept(this);
-    this.sayln(");");
+    walk(s.exp);
+    then(() -> this.sayln(");"));
   }
 
   @Override
   public void visit(While s) {
     this.printSpaces();
     this.say("while ( ");
-    s.condition.accept(this);
-    this.sayln(" )");
-    this.indent();
-    s.body.accept(this);
-    this.unIndent();
+    walk(s.condition);
+    then(() -> {
+      this.sayln(" )");
+      this.indent();
+    });
+    walk(s.body);
+    then(() -> this.unIndent());
   }
 
   // type
@@ -419,16 +469,20 @@ public class PrettyPrintVisitor implements Visitor {
 
     this.sayln("");
     for (Stm.T s : m.stms)
-      s.accept(this);
+      walk(s);
     // pop up frame before return instruction
-    this.sayln("  prev = frame.prev_;");
+    then(() -> {
+      this.sayln("  prev = frame.prev_;");
 
-    this.say("  return ");
-    m.retExp.accept(this);
-    this.sayln(";");
-    this.sayln("}");
-    this.methodName = null;
-    this.className = null;
+      this.say("  return ");
+    });
+    walk(m.retExp);
+    then(() -> {
+      this.sayln(";");
+      this.sayln("}");
+      this.methodName = null;
+      this.className = null;
+    });
   }
 
   private String outputGCStack(MethodSingle m) {
@@ -455,7 +509,7 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(MainMethodSingle m) {
 
-    this.methodName = "Tiger_main";
+    this.methodName = Symbol.symbol("Tiger_main");
     this.className = null;
 
     this.sayln("int Tiger_main ()");
@@ -467,10 +521,12 @@ public class PrettyPrintVisitor implements Visitor {
       this.say(" ");
       this.sayln(d.id + ";");
     }
-    m.stm.accept(this);
-    this.sayln("}\n");
+    walk(m.stm);
+    then(() -> {
+      this.sayln("}\n");
 
-    this.methodName = null;
+      this.methodName = null;
+    });
   }
 
   // vtables
@@ -573,22 +629,25 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(ProgramSingle p) {
     // we'd like to output to a file, rather than the "stdout".
+    String outputName;
+    if (this.ctx.outputName != null)
+      outputName = this.ctx.outputName;
+    else if (this.ctx.fileName != null)
+      outputName = this.ctx.fileName + ".c";
+    else
+      outputName = "a.c";
+
+    open(outputName);
+    // the walk below runs to its end before "walk" returns, so the file
+    // is closed here even when it fails half way
     try {
-      String outputName;
-      if (Control.ConCodeGen.outputName != null)
-        outputName = Control.ConCodeGen.outputName;
-      else if (Control.ConCodeGen.fileName != null)
-        outputName = Control.ConCodeGen.fileName + ".c";
-      else
-        outputName = "a.c";
-
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(outputName)));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+      printProgram(p);
+    } finally {
+      close();
     }
+  }
 
+  private void printProgram(ProgramSingle p) {
     this.sayln("// This is automatically generated by the Tiger compiler.");
     this.sayln("// Do NOT modify!\n");
     this.sayln("#include <malloc.h>");
@@ -625,23 +684,19 @@ public class PrettyPrintVisitor implements Visitor {
 
     this.sayln("// methods");
     for (Method.T m : p.methods) {
-      m.accept(this);
+      walk(m);
     }
-    this.sayln("");
-
-    this.sayln("// main method");
-    p.mainMethod.accept(this);
-    this.sayln("");
-
-    this.say("\n\n");
+    then(() -> {
+      this.sayln("");
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+      this.sayln("// main method");
+    });
+    walk(p.mainMethod);
+    then(() -> {
+      this.sayln("");
 
+      this.say("\n\n");
+    });
   }
 
 }
@@ -10,14 +10,25 @@ import codegen.C.Ast.Program.ProgramSingle;
 import codegen.C.Ast.Stm.*;
 import codegen.C.Ast.Type.ClassType;
 import codegen.C.Ast.Vtable.VtableSingle;
+import control.CompilationContext;
+import util.Symbol;
+import util.Trampoline;
 
 import java.util.LinkedList;
 
 // Given a Java ast, translate it into a C ast and outputs it.
 
+// The nodes are visited on the explicit stack of a "Trampoline", so
+// that deeply nested programs do not overflow the Java stack: a visit
+// schedules its children with "walk", and builds its own node from
+// theirs in a step scheduled with "then".
 public class TranslateVisitor implements ast.Visitor {
+  final CompilationContext ctx;
+  private final Trampoline steps;
   private ClassTable table;
-  private String classId;
+  // the class table of the elaborator, or null to build one
+  private final elaborator.ClassTable classTable;
+  private Symbol classId;
   private Type.T type; // type after translation
   private Dec.T dec;
   private Stm.T stm;
@@ -30,8 +41,18 @@ public class TranslateVisitor implements ast.Visitor {
   private MainMethod.T mainMethod;
   public Program.T program;
 
-  public TranslateVisitor() {
-    this.table = new ClassTable();
+  public TranslateVisitor(CompilationContext ctx) {
+    this(ctx, null);
+  }
+
+  // translate a program that "classTable", the class table its
+  // elaboration ended with, describes
+  public TranslateVisitor(CompilationContext ctx,
+                          elaborator.ClassTable classTable) {
+    this.ctx = ctx;
+    this.steps = new Trampoline();
+    this.classTable = classTable;
+    this.table = null;
     this.classId = null;
     this.type = null;
     this.dec = null;
@@ -47,49 +68,67 @@ public class TranslateVisitor implements ast.Visitor {
 
   // //////////////////////////////////////////////////////
   //
-  private String genId() {
-    return util.Temp.next();
+  private Symbol genId() {
+    return Symbol.symbol(ctx.newTemp());
+  }
+
+  private void walk(ast.Acceptable node) {
+    this.steps.then(() -> node.accept(this));
+  }
+
+  private void then(Runnable step) {
+    this.steps.then(step);
   }
 
   // /////////////////////////////////////////////////////
   // expressions
   @Override
   public void visit(ast.Ast.Exp.Add e) {
-    e.left.accept(this);
-    Exp.T left = this.exp;
-    e.right.accept(this);
-    this.exp = new Add(left, this.exp);
+    walk(e.left);
+    then(() -> {
+      Exp.T left = this.exp;
+      walk(e.right);
+      then(() -> this.exp = new Add(left, this.exp));
+    });
   }
 
   @Override
   public void visit(ast.Ast.Exp.And e) {
-    e.left.accept(this);
-    Exp.T left = this.exp;
-    e.right.accept(this);
-    this.exp = new And(left, this.exp);
+    walk(e.left);
+    then(() -> {
+      Exp.T left = this.exp;
+      walk(e.right);
+      then(() -> this.exp = new And(left, this.exp));
+    });
   }
 
   @Override
   public void visit(ast.Ast.Exp.ArraySelect e) {
-    e.index.accept(this);
-    Exp.T index = this.exp;
-    e.array.accept(this);
-    Exp.T array = this.exp;
-    this.exp = new ArraySelect(array, index);
+    walk(e.index);
+    then(() -> {
+      Exp.T index = this.exp;
+      walk(e.array);
+      then(() -> {
+        Exp.T array = this.exp;
+        this.exp = new ArraySelect(array, index);
+      });
+    });
   }
 
   @Override
   public void visit(ast.Ast.Exp.Call e) {
-    e.exp.accept(this);
-    String newid = this.genId();
-    this.tmpVars.add(new Dec.DecSingle(new ClassType(e.type), newid));
-    Exp.T exp = this.exp;
-    LinkedList<Exp.T> args = new LinkedList<>();
-    for (ast.Ast.Exp.T x : e.args) {
-      x.accept(this);
-      args.add(this.exp);
-    }
-    this.exp = new Call(newid, exp, e.id, args);
+    walk(e.exp);
+    then(() -> {
+      Symbol newid = this.genId();
+      this.tmpVars.add(new Dec.DecSingle(new ClassType(e.type), newid));
+      Exp.T exp = this.exp;
+      LinkedList<Exp.T> args = new LinkedList<>();
+      for (ast.Ast.Exp.T x : e.args) {
+        walk(x);
+        then(() -> args.add(this.exp));
+      }
+      then(() -> this.exp = new Call(newid, exp, e.id, args));
+    });
   }
 
   @Override
@@ -104,22 +143,26 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Length e) {
-    System.out.println();
+    ctx.out.println();
   }
 
   @Override
   public void visit(ast.Ast.Exp.Lt e) {
-    e.left.accept(this);
-    Exp.T left = this.exp;
-    e.right.accept(this);
-    Exp.T right = this.exp;
-    this.exp = new Lt(left, right);
+    walk(e.left);
+    then(() -> {
+      Exp.T left = this.exp;
+      walk(e.right);
+      then(() -> {
+        Exp.T right = this.exp;
+        this.exp = new Lt(left, right);
+      });
+    });
   }
 
   @Override
   public void visit(ast.Ast.Exp.NewIntArray e) {
-    e.exp.accept(this);
-    this.exp = new NewIntArray(this.exp);
+    walk(e.exp);
+    then(() -> this.exp = new NewIntArray(this.exp));
   }
 
   @Override
@@ -129,8 +172,8 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Not e) {
-    e.exp.accept(this);
-    this.exp = new Not(this.exp);
+    walk(e.exp);
+    then(() -> this.exp = new Not(this.exp));
   }
 
   @Override
@@ -140,11 +183,15 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Sub e) {
-    e.left.accept(this);
-    Exp.T left = this.exp;
-    e.right.accept(this);
-    Exp.T right = this.exp;
-    this.exp = new Sub(left, right);
+    walk(e.left);
+    then(() -> {
+      Exp.T left = this.exp;
+      walk(e.right);
+      then(() -> {
+        Exp.T right = this.exp;
+        this.exp = new Sub(left, right);
+      });
+    });
   }
 
   @Override
@@ -154,11 +201,15 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Times e) {
-    e.left.accept(this);
-    Exp.T left = this.exp;
-    e.right.accept(this);
-    Exp.T right = this.exp;
-    this.exp = new Times(left, right);
+    walk(e.left);
+    then(() -> {
+      Exp.T left = this.exp;
+      walk(e.right);
+      then(() -> {
+        Exp.T right = this.exp;
+        this.exp = new Times(left, right);
+      });
+    });
   }
 
   @Override
@@ -170,17 +221,21 @@ public class TranslateVisitor implements ast.Visitor {
   // statements
   @Override
   public void visit(ast.Ast.Stm.Assign s) {
-    s.exp.accept(this);
-    this.stm = new Assign(s.id, this.exp);
+    walk(s.exp);
+    then(() -> this.stm = new Assign(s.id, this.exp));
   }
 
   @Override
   public void visit(ast.Ast.Stm.AssignArray s) {
-    s.index.accept(this);
-    Exp.T index = this.exp;
-    s.exp.accept(this);
-    Exp.T exp = this.exp;
-    this.stm = new AssignArray(s.id, index, exp);
+    walk(s.index);
+    then(() -> {
+      Exp.T index = this.exp;
+      walk(s.exp);
+      then(() -> {
+        Exp.T exp = this.exp;
+        this.stm = new AssignArray(s.id, index, exp);
+      });
+    });
   }
 
   @Override
@@ -188,35 +243,43 @@ public class TranslateVisitor implements ast.Visitor {
 
     LinkedList<Stm.T> stmts = new LinkedList<>();
     for (ast.Ast.Stm.T stm : s.stms) {
-      stm.accept(this);
-      stmts.add(this.stm);
+      walk(stm);
+      then(() -> stmts.add(this.stm));
     }
-    this.stm = new Block(stmts);
+    then(() -> this.stm = new Block(stmts));
   }
 
   @Override
   public void visit(ast.Ast.Stm.If s) {
-    s.condition.accept(this);
-    Exp.T condition = this.exp;
-    s.thenn.accept(this);
-    Stm.T thenn = this.stm;
-    s.elsee.accept(this);
-    Stm.T elsee = this.stm;
-    this.stm = new If(condition, thenn, elsee);
+    walk(s.condition);
+    then(() -> {
+      Exp.T condition = this.exp;
+      walk(s.thenn);
+      then(() -> {
+        Stm.T thenn = this.stm;
+        walk(s.elsee);
+        then(() -> {
+          Stm.T elsee = this.stm;
+          this.stm = new If(condition, thenn, elsee);
+        });
+      });
+    });
   }
 
   @Override
   public void visit(ast.Ast.Stm.Print s) {
-    s.exp.accept(this);
-    this.stm = new Print(this.exp);
+    walk(s.exp);
+    then(() -> this.stm = new Print(this.exp));
   }
 
   @Override
   public void visit(ast.Ast.Stm.While s) {
-    s.condition.accept(this);
-    Exp.T condition = this.exp;
-    s.body.accept(this);
-    this.stm = new While(condition, this.stm);
+    walk(s.condition);
+    then(() -> {
+      Exp.T condition = this.exp;
+      walk(s.body);
+      then(() -> this.stm = new While(condition, this.stm));
+    });
   }
 
   // ///////////////////////////////////////////
@@ -257,7 +320,7 @@ public class TranslateVisitor implements ast.Visitor {
     Type.T newRetType = this.type;
     LinkedList<Dec.T> newFormals = new LinkedList<>();
     newFormals.add(new Dec.DecSingle(
-        new ClassType(this.classId), "this"));
+        new ClassType(this.classId), Symbol.symbol("this")));
     for (ast.Ast.Dec.T d : m.formals) {
       d.accept(this);
       newFormals.add(this.dec);
@@ -269,14 +332,16 @@ public class TranslateVisitor implements ast.Visitor {
     }
     LinkedList<Stm.T> newStm = new LinkedList<>();
     for (ast.Ast.Stm.T s : m.stms) {
-      s.accept(this);
-      newStm.add(this.stm);
+      walk(s);
+      then(() -> newStm.add(this.stm));
     }
-    m.retExp.accept(this);
-    Exp.T retExp = this.exp;
-    locals.addAll(tmpVars);
-    this.method = new MethodSingle(newRetType, this.classId, m.id,
-        newFormals, locals, newStm, retExp);
+    walk(m.retExp);
+    then(() -> {
+      Exp.T retExp = this.exp;
+      locals.addAll(tmpVars);
+      this.method = new MethodSingle(newRetType, this.classId, m.id,
+          newFormals, locals, newStm, retExp);
+    });
   }
 
   // class
@@ -287,8 +352,8 @@ public class TranslateVisitor implements ast.Visitor {
     this.vtables.add(new VtableSingle(c.id, cb.methods));
     this.classId = c.id;
     for (ast.Ast.Method.T m : c.methods) {
-      m.accept(this);
-      this.methods.add(this.method);
+      walk(m);
+      then(() -> this.methods.add(this.method));
     }
   }
 
@@ -302,9 +367,9 @@ public class TranslateVisitor implements ast.Visitor {
 
     this.tmpVars = new LinkedList<>();
 
-    c.stm.accept(this);
-    this.mainMethod = new MainMethodSingle(
-        this.tmpVars, this.stm);
+    walk(c.stm);
+    then(() -> this.mainMethod = new MainMethodSingle(
+        this.tmpVars, this.stm));
   }
 
   // /////////////////////////////////////////////////////
@@ -315,47 +380,22 @@ public class TranslateVisitor implements ast.Visitor {
     // enter "main" into the table.
   }
 
-  private void scanClasses(LinkedList<ast.Ast.Class.T> cs) {
-    // put empty chuncks into the table
+  private void scanClasses(util.Seq<ast.Ast.Class.T> cs) {
+    // the fields and methods of each class, inherited ones included,
+    // as the class table of the elaborator lays them out
     for (ast.Ast.Class.T c : cs) {
       ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
       this.table.init(cc.id, cc.extendss);
     }
-
-    // put class fields and methods into the table
-    for (ast.Ast.Class.T c : cs) {
-      ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
-      LinkedList<Dec.T> newDecs = new LinkedList<>();
-      for (ast.Ast.Dec.T dec : cc.decs) {
-        dec.accept(this);
-        newDecs.add(this.dec);
-      }
-      this.table.initDecs(cc.id, newDecs);
-
-      // all methods
-      LinkedList<ast.Ast.Method.T> methods = cc.methods;
-      for (ast.Ast.Method.T mthd : methods) {
-        ast.Ast.Method.MethodSingle m = (ast.Ast.Method.MethodSingle) mthd;
-        LinkedList<Dec.T> newArgs = new LinkedList<>();
-        for (ast.Ast.Dec.T arg : m.formals) {
-          arg.accept(this);
-          newArgs.add(this.dec);
-        }
-        m.retType.accept(this);
-        Type.T newRet = this.type;
-        this.table.initMethod(cc.id, newRet, newArgs, m.id);
-      }
-    }
-
-    // calculate all inheritance information
-    for (ast.Ast.Class.T c : cs) {
-      ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
-      this.table.inherit(cc.id);
-    }
   }
 
   private void scanProgram(ast.Ast.Program.T p) {
     ast.Ast.Program.ProgramSingle pp = (ast.Ast.Program.ProgramSingle) p;
+    this.table = new ClassTable(this.classTable != null ? this.classTable
+        : elaborator.ClassTable.of(pp), t -> {
+      t.accept(this);
+      return this.type;
+    });
     scanMain(pp.mainClass);
     scanClasses(pp.classes);
   }
@@ -371,11 +411,11 @@ public class TranslateVisitor implements ast.Visitor {
     scanProgram(p);
 
     // do translations
-    p.mainClass.accept(this);
+    walk(p.mainClass);
     for (ast.Ast.Class.T classs : p.classes) {
-      classs.accept(this);
+      walk(classs);
     }
-    this.program = new ProgramSingle(this.classes, this.vtables,
-        this.methods, this.mainMethod);
+    then(() -> this.program = new ProgramSingle(this.classes, this.vtables,
+        this.methods, this.mainMethod));
   }
 }
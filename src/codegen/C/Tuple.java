@@ -1,13 +1,14 @@
 package codegen.C;
 
 import codegen.C.Ast.Type;
+import util.Symbol;
 
 public class Tuple {
-  public String classs; // name of the class
+  public Symbol classs; // name of the class
   public Type.T type; // type of the field
-  public String id; // name of the field or method
+  public Symbol id; // name of the field or method
 
-  public Tuple(String classs, Type.T type, String id) {
+  public Tuple(Symbol classs, Type.T type, Symbol id) {
     this.classs = classs;
     this.type = type;
     this.id = id;
@@ -24,7 +25,7 @@ public class Tuple {
     if (!(t instanceof Tuple))
       return false;
 
-    return this.id.equals(((Tuple) t).id);
+    return this.id == ((Tuple) t).id;
   }
 
 }
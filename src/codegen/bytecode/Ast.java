@@ -1,6 +1,7 @@
 package codegen.bytecode;
 
 import util.Label;
+import util.Symbol;
 
 import java.util.LinkedList;
 
@@ -12,15 +13,15 @@ public class Ast {
     }
 
     public static class ClassType extends T {
-      public String id;
+      public Symbol id;
 
-      public ClassType(String id) {
+      public ClassType(Symbol id) {
         this.id = id;
       }
 
       @Override
       public String toString() {
-        return this.id;
+        return this.id.toString();
       }
 
       @Override
@@ -68,9 +69,9 @@ public class Ast {
 
     public static class DecSingle extends T {
       public Type.T type;
-      public String id;
+      public Symbol id;
 
-      public DecSingle(Type.T type, String id) {
+      public DecSingle(Type.T type, Symbol id) {
         this.type = type;
         this.id = id;
       }
@@ -90,10 +91,18 @@ public class Ast {
     }
 
     public static class Comment extends T {
-      public String comment;
+      // the kind of node the code that follows is for. Neither the
+      // node nor its text is kept: the text is as long as the source
+      // it describes, and the node may be a method body that "ast.Flat"
+      // decoded only for the walk.
+      public String about;
 
-      public Comment(String comment) {
-        this.comment = comment;
+      public Comment(Object about) {
+        this.about = about.getClass().getSimpleName();
+      }
+
+      public String comment() {
+        return this.about;
       }
 
       @Override
@@ -165,10 +174,10 @@ public class Ast {
 
     public static class Putfield extends T {
       public codegen.bytecode.Ast.Type.T type;
-      public String className;
-      public String fieldName;
+      public Symbol className;
+      public Symbol fieldName;
 
-      public Putfield(codegen.bytecode.Ast.Type.T type, String className, String fieldName) {
+      public Putfield(codegen.bytecode.Ast.Type.T type, Symbol className, Symbol fieldName) {
         this.type = type;
         this.className = className;
         this.fieldName = fieldName;
@@ -182,10 +191,10 @@ public class Ast {
 
     public static class Getfield extends T {
       public codegen.bytecode.Ast.Type.T type;
-      public String className;
-      public String fieldName;
+      public Symbol className;
+      public Symbol fieldName;
 
-      public Getfield(codegen.bytecode.Ast.Type.T type, String className, String fieldName) {
+      public Getfield(codegen.bytecode.Ast.Type.T type, Symbol className, Symbol fieldName) {
         this.type = type;
         this.className = className;
         this.fieldName = fieldName;
@@ -283,12 +292,12 @@ public class Ast {
     }
 
     public static class Invokevirtual extends T {
-      public String f;
-      public String c;
+      public Symbol f;
+      public Symbol c;
       public LinkedList<Type.T> at;
       public Type.T rt;
 
-      public Invokevirtual(String f, String c, LinkedList<Type.T> at, Type.T rt) {
+      public Invokevirtual(Symbol f, Symbol c, LinkedList<Type.T> at, Type.T rt) {
         this.f = f;
         this.c = c;
         this.at = at;
@@ -395,9 +404,9 @@ public class Ast {
     }
 
     public static class New extends T {
-      public String c;
+      public Symbol c;
 
-      public New(String c) {
+      public New(Symbol c) {
         this.c = c;
       }
 
@@ -427,15 +436,15 @@ public class Ast {
 
     public static class MethodSingle extends T {
       public Type.T retType;
-      public String id;
-      public String classId;
+      public Symbol id;
+      public Symbol classId;
       public LinkedList<Dec.T> formals;
       public LinkedList<Dec.T> locals;
       public LinkedList<Stm.T> stms;
       public int index; // number of index
       public int retExp;
 
-      public MethodSingle(Type.T retType, String id, String classId,
+      public MethodSingle(Type.T retType, Symbol id, Symbol classId,
                           LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
                           LinkedList<Stm.T> stms, int retExp, int index) {
         this.retType = retType;
@@ -463,12 +472,12 @@ public class Ast {
     }
 
     public static class ClassSingle extends T {
-      public String id;
-      public String extendss; // null for non-existing "extends"
+      public Symbol id;
+      public Symbol extendss; // null for non-existing "extends"
       public LinkedList<Dec.T> decs;
       public LinkedList<Method.T> methods;
 
-      public ClassSingle(String id, String extendss,
+      public ClassSingle(Symbol id, Symbol extendss,
                          LinkedList<Dec.T> decs,
                          LinkedList<Method.T> methods) {
         this.id = id;
@@ -492,11 +501,11 @@ public class Ast {
     }
 
     public static class MainClassSingle extends T {
-      public String id;
-      public String arg;
+      public Symbol id;
+      public Symbol arg;
       public LinkedList<Stm.T> stms;
 
-      public MainClassSingle(String id, String arg,
+      public MainClassSingle(Symbol id, Symbol arg,
                              LinkedList<Stm.T> stms) {
         this.id = id;
         this.arg = arg;
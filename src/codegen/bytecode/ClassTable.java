@@ -2,75 +2,82 @@ package codegen.bytecode;
 
 import codegen.bytecode.Ast.Dec;
 import codegen.bytecode.Ast.Type;
+import elaborator.Member;
+import elaborator.MethodType;
+import util.Symbol;
+import util.SymbolMap;
 
-public class ClassTable {
-  private java.util.Hashtable<String, ClassBinding> table;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.function.Function;
 
-  public ClassTable() {
-    this.table = new java.util.Hashtable<>();
-  }
+// The fields and the methods of each class, inherited ones included,
+// with their types translated. The layout of the members and their
+// lookup by name come from the tables of the elaborator
+// ("elaborator.ClassTable"), which have resolved the inheritance
+// already.
+public class ClassTable {
+  private SymbolMap<ClassBinding> table;
+  private final elaborator.ClassTable classes;
+  private final Function<ast.Ast.Type.T, Type.T> type;
+  // the translation of each member, shared by all the classes that
+  // inherit it
+  private final IdentityHashMap<Member<ast.Ast.Type.T>, Tuple> fields;
+  private final IdentityHashMap<Member<MethodType>, Ftuple> methods;
 
-  public void init(String current, String extendss) {
-    this.table.put(current, new ClassBinding(extendss));
+  // the classes of "classes", whose types "type" translates
+  public ClassTable(elaborator.ClassTable classes,
+                    Function<ast.Ast.Type.T, Type.T> type) {
+    this.table = new SymbolMap<>();
+    this.classes = classes;
+    this.type = type;
+    this.fields = new IdentityHashMap<>();
+    this.methods = new IdentityHashMap<>();
   }
 
-  public void initDecs(String current,
-                       java.util.LinkedList<Dec.T> decs) {
-    ClassBinding cb = this.table.get(current);
-    for (Dec.T dec : decs) {
-      Dec.DecSingle decc = (Dec.DecSingle) dec;
-      cb.put(current, decc.type, decc.id);
-    }
+  public void init(Symbol current, Symbol extendss) {
+    ClassBinding cb = new ClassBinding(extendss);
+    elaborator.ClassBinding members = this.classes.get(current);
+    for (Member<ast.Ast.Type.T> f : members.allFields)
+      cb.put(field(f));
+    for (Member<MethodType> m : members.allMethods)
+      cb.putm(method(m));
     this.table.put(current, cb);
   }
 
-  public void initMethod(String current, Type.T ret,
-                         java.util.LinkedList<Dec.T> args, String mid) {
-    ClassBinding cb = this.table.get(current);
-    cb.putm(current, ret, args, mid);
-    return;
+  private Tuple field(Member<ast.Ast.Type.T> f) {
+    return this.fields.computeIfAbsent(f,
+        k -> new Tuple(k.classs, this.type.apply(k.type), k.id));
   }
 
-  public void inherit(String c) {
-    ClassBinding cb = this.table.get(c);
-    if (cb.visited)
-      return;
-
-    if (cb.extendss == null) {
-      cb.visited = true;
-      return;
-    }
-
-    inherit(cb.extendss);
-
-    ClassBinding pb = this.table.get(cb.extendss);
-    // this tends to be very slow...
-    // need a much fancier data structure.
-    java.util.LinkedList<Tuple> newFields = new java.util.LinkedList<Tuple>();
-    newFields.addAll(pb.fields);
-    newFields.addAll(cb.fields);
-    cb.update(newFields);
-    // methods;
-    java.util.ArrayList<Ftuple> newMethods = new java.util.ArrayList<Ftuple>();
-    newMethods.addAll(pb.methods);
-    for (Ftuple t : cb.methods) {
-      int index = newMethods.indexOf(t);
-      if (index == -1) {
-        newMethods.add(t);
-        continue;
+  private Ftuple method(Member<MethodType> m) {
+    return this.methods.computeIfAbsent(m, k -> {
+      LinkedList<Dec.T> args = new LinkedList<>();
+      for (ast.Ast.Dec.T d : k.type.argsType) {
+        ast.Ast.Dec.DecSingle dec = (ast.Ast.Dec.DecSingle) d;
+        args.add(new Dec.DecSingle(this.type.apply(dec.type), dec.id));
       }
-      newMethods.set(index, t);
-    }
-    cb.update(newMethods);
-    // set the mark
-    cb.visited = true;
+      return new Ftuple(k.classs, this.type.apply(k.type.retType), args, k.id);
+    });
   }
 
   // return null for non-existing keys
-  public ClassBinding get(String c) {
+  public ClassBinding get(Symbol c) {
     return this.table.get(c);
   }
 
+  // the field "id" of the class "c", or null
+  public Tuple getField(Symbol c, Symbol id) {
+    Member<ast.Ast.Type.T> f = this.classes.get(c).field(id);
+    return f == null ? null : field(f);
+  }
+
+  // the method "id" of the class "c", or null
+  public Ftuple getMethod(Symbol c, Symbol id) {
+    Member<MethodType> m = this.classes.get(c).method(id);
+    return m == null ? null : method(m);
+  }
+
   @Override
   public String toString() {
     return this.table.toString();
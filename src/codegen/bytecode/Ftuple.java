@@ -2,17 +2,18 @@ package codegen.bytecode;
 
 import codegen.bytecode.Ast.Dec;
 import codegen.bytecode.Ast.Type;
+import util.Symbol;
 
 import java.util.LinkedList;
 
 public class Ftuple {
-  public String classs; // name of the class
+  public Symbol classs; // name of the class
   public Type.T ret; // type of the field
   public LinkedList<Dec.T> args; // type of args
-  public String id; // name of the field or method
+  public Symbol id; // name of the field or method
 
-  public Ftuple(String classs, Type.T ret,
-                LinkedList<Dec.T> args, String id) {
+  public Ftuple(Symbol classs, Type.T ret,
+                LinkedList<Dec.T> args, Symbol id) {
     this.classs = classs;
     this.ret = ret;
     this.args = args;
@@ -30,7 +31,7 @@ public class Ftuple {
     if (!(t instanceof Ftuple))
       return false;
 
-    return this.id.equals(((Ftuple) t).id);
+    return this.id == ((Ftuple) t).id;
   }
 
 }
@@ -15,32 +15,28 @@ import codegen.bytecode.Ast.Type.IntArray;
 import util.Bug;
 
 public class PrettyPrintVisitor implements Visitor {
-  private java.io.BufferedWriter writer;
+  private util.Output output;
+  private java.io.Writer writer;
   private ClassTable table;
 
   public PrettyPrintVisitor(ClassTable table) {
+    this(table, util.Output.FILES);
+  }
+
+  public PrettyPrintVisitor(ClassTable table, util.Output output) {
     this.table = table;
+    this.output = output;
   }
 
   private void sayln(String s) {
     say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    say("\n");
   }
 
   private void isayln(String s) {
     say("    ");
     say(s);
-    try {
-      this.writer.write("\n");
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
+    say("\n");
   }
 
   private void isay(String s) {
@@ -50,12 +46,31 @@ public class PrettyPrintVisitor implements Visitor {
   private void say(String s) {
     try {
       this.writer.write(s);
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
+    }
+  }
+
+  private void open(String name) {
+    try {
+      this.writer = this.output.open(name);
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
+    }
+  }
+
+  private void close() {
+    try {
+      this.writer.close();
+    } catch (java.io.IOException e) {
+      throw cannotWrite(e);
     }
   }
 
+  private static util.CompileError cannotWrite(java.io.IOException e) {
+    return new util.CompileError("cannot write the output: " + e, e);
+  }
+
   @Override
   public void visit(Comment s) {
     this.sayln("; " + s);
@@ -147,15 +162,11 @@ public class PrettyPrintVisitor implements Visitor {
       new Bug();
     }
 
-    for (Ftuple method : cb.methods) {
-      if (method.id.equals(s.f)) {
-        for (Dec.T d : method.args) {
-          ((DecSingle) d).type.accept(this);
-        }
-
-        break;
+    Ftuple method = table.getMethod(s.c, s.f);
+    if (method != null) {
+      for (Dec.T d : method.args) {
+        ((DecSingle) d).type.accept(this);
       }
-
     }
 
     this.say(")");
@@ -262,51 +273,41 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(ClassSingle c) {
     // Every class must go into its own class file.
+    open(c.id + ".j");
     try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".j")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
-
-    // header
-    this.sayln("; This is automatically generated by the Tiger compiler.");
-    this.sayln("; Do NOT modify!\n");
-
-    this.sayln(".class public " + c.id);
-    if (c.extendss == null)
-      this.sayln(".super java/lang/Object\n");
-    else
-      this.sayln(".super " + c.extendss);
-
-    // fields
-    for (Dec.T d : c.decs) {
-      DecSingle dd = (DecSingle) d;
-      this.say(".field public " + dd.id + " ");
-      dd.type.accept(this);
-      this.sayln("");
-    }
-
-    // methods
-    this.sayln(".method public <init>()V");
-    this.isayln("aload 0");
-    if (c.extendss == null)
-      this.isayln("invokespecial java/lang/Object/<init>()V");
-    else
-      this.isayln("invokespecial " + c.extendss + "/<init>()V");
-    this.isayln("return");
-    this.sayln(".end method\n\n");
-
-    for (Method.T m : c.methods) {
-      m.accept(this);
-    }
+      // header
+      this.sayln("; This is automatically generated by the Tiger compiler.");
+      this.sayln("; Do NOT modify!\n");
+
+      this.sayln(".class public " + c.id);
+      if (c.extendss == null)
+        this.sayln(".super java/lang/Object\n");
+      else
+        this.sayln(".super " + c.extendss);
+
+      // fields
+      for (Dec.T d : c.decs) {
+        DecSingle dd = (DecSingle) d;
+        this.say(".field public " + dd.id + " ");
+        dd.type.accept(this);
+        this.sayln("");
+      }
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+      // methods
+      this.sayln(".method public <init>()V");
+      this.isayln("aload 0");
+      if (c.extendss == null)
+        this.isayln("invokespecial java/lang/Object/<init>()V");
+      else
+        this.isayln("invokespecial " + c.extendss + "/<init>()V");
+      this.isayln("return");
+      this.sayln(".end method\n\n");
+
+      for (Method.T m : c.methods) {
+        m.accept(this);
+      }
+    } finally {
+      close();
     }
   }
 
@@ -314,32 +315,22 @@ public class PrettyPrintVisitor implements Visitor {
   @Override
   public void visit(MainClassSingle c) {
     // Every class must go into its own class file.
+    open(c.id + ".j");
     try {
-      this.writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
-          new java.io.FileOutputStream(c.id + ".j")));
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
-
-    this.sayln("; This is automatically generated by the Tiger compiler.");
-    this.sayln("; Do NOT modify!\n");
-
-    this.sayln(".class public " + c.id);
-    this.sayln(".super java/lang/Object\n");
-    this.sayln(".method public static main([Ljava/lang/String;)V");
-    this.isayln(".limit stack 4096");
-    this.isayln(".limit locals 2");
-    for (T s : c.stms)
-      s.accept(this);
-    this.isayln("return");
-    this.sayln(".end method");
+      this.sayln("; This is automatically generated by the Tiger compiler.");
+      this.sayln("; Do NOT modify!\n");
 
-    try {
-      this.writer.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+      this.sayln(".class public " + c.id);
+      this.sayln(".super java/lang/Object\n");
+      this.sayln(".method public static main([Ljava/lang/String;)V");
+      this.isayln(".limit stack 4096");
+      this.isayln(".limit locals 2");
+      for (T s : c.stms)
+        s.accept(this);
+      this.isayln("return");
+      this.sayln(".end method");
+    } finally {
+      close();
     }
   }
 
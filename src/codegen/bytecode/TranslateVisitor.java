@@ -9,19 +9,30 @@ import codegen.bytecode.Ast.Method.MethodSingle;
 import codegen.bytecode.Ast.Program.ProgramSingle;
 import codegen.bytecode.Ast.Stm.*;
 import codegen.bytecode.Ast.Type.Int;
+import control.CompilationContext;
 import util.Bug;
 import util.Label;
+import util.Symbol;
+import util.SymbolMap;
+import util.Trampoline;
 
-import java.util.Hashtable;
 import java.util.LinkedList;
 
 // Given a Java ast, translate it into Java bytecode.
-
+//
+// The nodes are visited on the explicit stack of a "Trampoline", so
+// that deeply nested programs do not overflow the Java stack: a visit
+// schedules its children with "walk", and the instructions that come
+// after them with "then".
 public class TranslateVisitor implements ast.Visitor {
+  private final CompilationContext ctx;
+  private final Trampoline steps;
   private ClassTable table;
-  private String classId;
+  // the class table of the elaborator, or null to build one
+  private final elaborator.ClassTable classTable;
+  private Symbol classId;
   private int index;
-  private Hashtable<String, Integer> indexTable;
+  private SymbolMap<Integer> indexTable;
   private Type.T type; // type after translation
   private Dec.T dec;
   private LinkedList<T> stms;
@@ -30,8 +41,18 @@ public class TranslateVisitor implements ast.Visitor {
   private MainClass.T mainClass;
   public Program.T program;
 
-  public TranslateVisitor() {
-    this.table = new ClassTable();
+  public TranslateVisitor(CompilationContext ctx) {
+    this(ctx, null);
+  }
+
+  // translate a program that "classTable", the class table its
+  // elaboration ended with, describes
+  public TranslateVisitor(CompilationContext ctx,
+                          elaborator.ClassTable classTable) {
+    this.ctx = ctx;
+    this.steps = new Trampoline();
+    this.classTable = classTable;
+    this.table = null;
     this.classId = null;
     this.indexTable = null;
     this.type = null;
@@ -47,46 +68,56 @@ public class TranslateVisitor implements ast.Visitor {
     this.stms.add(s);
   }
 
+  private void walk(ast.Acceptable node) {
+    this.steps.then(() -> node.accept(this));
+  }
+
+  private void then(Runnable step) {
+    this.steps.then(step);
+  }
+
   // /////////////////////////////////////////////////////
   // expressions
   @Override
   public void visit(ast.Ast.Exp.Add e) {
-    emit(new Comment(e.toString()));
-    e.left.accept(this);
-    e.right.accept(this);
-    emit(new Iadd());
+    emit(new Comment(e));
+    walk(e.left);
+    walk(e.right);
+    then(() -> emit(new Iadd()));
   }
 
   @Override
   public void visit(ast.Ast.Exp.And e) {
-    emit(new Comment(e.toString()));
-    e.left.accept(this);
-    e.right.accept(this);
+    emit(new Comment(e));
+    walk(e.left);
+    walk(e.right);
 
-    emit(new Iand());
+    then(() -> emit(new Iand()));
   }
 
   @Override
   public void visit(ast.Ast.Exp.ArraySelect e) {
-    e.array.accept(this);
-    e.index.accept(this);
-    emit(new Iaload());
+    walk(e.array);
+    walk(e.index);
+    then(() -> emit(new Iaload()));
   }
 
   @Override
   public void visit(ast.Ast.Exp.Call e) {
-    e.exp.accept(this);
+    walk(e.exp);
     for (ast.Ast.Exp.T x : e.args) {
-      x.accept(this);
+      walk(x);
     }
-    e.rt.accept(this);
-    Type.T rt = this.type;
-    LinkedList<Type.T> at = new LinkedList<>();
-    for (ast.Ast.Type.T t : e.at) {
-      t.accept(this);
-      at.add(this.type);
-    }
-    emit(new Invokevirtual(e.id, e.type, at, rt));
+    then(() -> {
+      e.rt.accept(this);
+      Type.T rt = this.type;
+      LinkedList<Type.T> at = new LinkedList<>();
+      for (ast.Ast.Type.T t : e.at) {
+        t.accept(this);
+        at.add(this.type);
+      }
+      emit(new Invokevirtual(e.id, e.type, at, rt));
+    });
   }
 
   @Override
@@ -103,12 +134,9 @@ public class TranslateVisitor implements ast.Visitor {
     }
 
     if (e.type == null) {
-      for (Tuple t : cb.fields) {
-        if (t.id.equals(e.id)) {
-          this.type = t.type;
-          break;
-        }
-      }
+      Tuple t = this.table.getField(classId, e.id);
+      if (t != null)
+        this.type = t.type;
     } else {
       e.type.accept(this);
     }
@@ -128,32 +156,34 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Length e) {
-    e.array.accept(this);
-    emit(new Iarraylength());
+    walk(e.array);
+    then(() -> emit(new Iarraylength()));
   }
 
   @Override
   public void visit(ast.Ast.Exp.Lt e) {
 
-    emit(new Comment(e.toString()));
+    emit(new Comment(e));
 
-    Label tl = new Label(), fl = new Label(), el = new Label();
-    e.left.accept(this);
-    e.right.accept(this);
-    emit(new Ificmplt(tl));
-    emit(new LabelJ(fl));
-    emit(new Ldc(0));
-    emit(new Goto(el));
-    emit(new LabelJ(tl));
-    emit(new Ldc(1));
-    emit(new Goto(el));
-    emit(new LabelJ(el));
+    Label tl = ctx.newLabel(), fl = ctx.newLabel(), el = ctx.newLabel();
+    walk(e.left);
+    walk(e.right);
+    then(() -> {
+      emit(new Ificmplt(tl));
+      emit(new LabelJ(fl));
+      emit(new Ldc(0));
+      emit(new Goto(el));
+      emit(new LabelJ(tl));
+      emit(new Ldc(1));
+      emit(new Goto(el));
+      emit(new LabelJ(el));
+    });
   }
 
   @Override
   public void visit(ast.Ast.Exp.NewIntArray e) {
-    e.exp.accept(this);
-    emit(new Inewarray("int"));
+    walk(e.exp);
+    then(() -> emit(new Inewarray("int")));
   }
 
   @Override
@@ -163,14 +193,16 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Not e) {
-    Label label1 = new Label(), label2 = new Label();
-    e.exp.accept(this);
-    emit(new Ifne(label1));
-    emit(new Ldc(1));
-    emit(new Goto(label2));
-    emit(new LabelJ(label1));
-    emit(new Ldc(0));
-    emit(new LabelJ(label2));
+    Label label1 = ctx.newLabel(), label2 = ctx.newLabel();
+    walk(e.exp);
+    then(() -> {
+      emit(new Ifne(label1));
+      emit(new Ldc(1));
+      emit(new Goto(label2));
+      emit(new LabelJ(label1));
+      emit(new Ldc(0));
+      emit(new LabelJ(label2));
+    });
   }
 
   @Override
@@ -180,9 +212,9 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Sub e) {
-    e.left.accept(this);
-    e.right.accept(this);
-    emit(new Isub());
+    walk(e.left);
+    walk(e.right);
+    then(() -> emit(new Isub()));
   }
 
   @Override
@@ -192,9 +224,9 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Times e) {
-    e.left.accept(this);
-    e.right.accept(this);
-    emit(new Imul());
+    walk(e.left);
+    walk(e.right);
+    then(() -> emit(new Imul()));
   }
 
   @Override
@@ -217,17 +249,21 @@ public class TranslateVisitor implements ast.Visitor {
       }
 
       emit(new Aload(0));
-      s.exp.accept(this);
-      s.type.accept(this);
-      emit(new Putfield(this.type, classId, s.id));
+      walk(s.exp);
+      then(() -> {
+        s.type.accept(this);
+        emit(new Putfield(this.type, classId, s.id));
+      });
     } else {
 
-      s.exp.accept(this);
-      ast.Ast.Type.T type = s.type;
-      if (type.getNum() > 0)
-        emit(new Astore(index));
-      else
-        emit(new Istore(index));
+      walk(s.exp);
+      then(() -> {
+        ast.Ast.Type.T type = s.type;
+        if (type.getNum() > 0)
+          emit(new Astore(index));
+        else
+          emit(new Istore(index));
+      });
     }
   }
 
@@ -248,49 +284,57 @@ public class TranslateVisitor implements ast.Visitor {
       emit(new Astore(index));
     }
 
-    s.index.accept(this);
-    s.exp.accept(this);
-    emit(new Iastore());
+    walk(s.index);
+    walk(s.exp);
+    then(() -> emit(new Iastore()));
 
   }
 
   @Override
   public void visit(ast.Ast.Stm.Block s) {
     for (ast.Ast.Stm.T stm : s.stms) {
-      stm.accept(this);
+      walk(stm);
     }
   }
 
   @Override
   public void visit(ast.Ast.Stm.If s) {
-    Label tl = new Label(), fl = new Label(), el = new Label();
-    s.condition.accept(this);
-
-    emit(new Ifne(tl));
-    emit(new LabelJ(fl));
-    s.elsee.accept(this);
-    emit(new Goto(el));
-    emit(new LabelJ(tl));
-    s.thenn.accept(this);
-    emit(new Goto(el));
-    emit(new LabelJ(el));
+    Label tl = ctx.newLabel(), fl = ctx.newLabel(), el = ctx.newLabel();
+    walk(s.condition);
+
+    then(() -> {
+      emit(new Ifne(tl));
+      emit(new LabelJ(fl));
+    });
+    walk(s.elsee);
+    then(() -> {
+      emit(new Goto(el));
+      emit(new LabelJ(tl));
+    });
+    walk(s.thenn);
+    then(() -> {
+      emit(new Goto(el));
+      emit(new LabelJ(el));
+    });
   }
 
   @Override
   public void visit(ast.Ast.Stm.Print s) {
-    s.exp.accept(this);
-    emit(new Print());
+    walk(s.exp);
+    then(() -> emit(new Print()));
   }
 
   @Override
   public void visit(ast.Ast.Stm.While s) {
-    Label condLabel = new Label(), quitLabel = new Label();
+    Label condLabel = ctx.newLabel(), quitLabel = ctx.newLabel();
     emit(new LabelJ(condLabel));
-    s.condition.accept(this);
-    emit(new Ifeq(quitLabel));
-    s.body.accept(this);
-    emit(new Goto(condLabel));
-    emit(new LabelJ(quitLabel));
+    walk(s.condition);
+    then(() -> emit(new Ifeq(quitLabel)));
+    walk(s.body);
+    then(() -> {
+      emit(new Goto(condLabel));
+      emit(new LabelJ(quitLabel));
+    });
   }
 
   // type
@@ -331,7 +375,7 @@ public class TranslateVisitor implements ast.Visitor {
     // record, in a hash table, each var's index
     // this index will be used in the load store operation
     this.index = 1;
-    this.indexTable = new Hashtable<>();
+    this.indexTable = new SymbolMap<>();
 
     m.retType.accept(this);
     Type.T newRetType = this.type;
@@ -347,19 +391,21 @@ public class TranslateVisitor implements ast.Visitor {
     }
     this.stms = new LinkedList<>();
     for (ast.Ast.Stm.T s : m.stms) {
-      s.accept(this);
+      walk(s);
     }
 
     // return statement is specially treated
-    m.retExp.accept(this);
+    walk(m.retExp);
 
-    if (m.retType.getNum() > 0)
-      emit(new Areturn());
-    else
-      emit(new Ireturn());
+    then(() -> {
+      if (m.retType.getNum() > 0)
+        emit(new Areturn());
+      else
+        emit(new Ireturn());
 
-    this.method = new MethodSingle(newRetType, m.id, this.classId, newFormals,
-        locals, this.stms, 0, this.index);
+      this.method = new MethodSingle(newRetType, m.id, this.classId, newFormals,
+          locals, this.stms, 0, this.index);
+    });
 
   }
 
@@ -370,7 +416,7 @@ public class TranslateVisitor implements ast.Visitor {
     LinkedList<Dec.T> newDecs = new LinkedList<>();
 
     this.index = 1;
-    this.indexTable = new Hashtable<>();
+    this.indexTable = new SymbolMap<>();
 
     for (ast.Ast.Dec.T dec : c.decs) {
       dec.accept(this);
@@ -378,18 +424,20 @@ public class TranslateVisitor implements ast.Visitor {
     }
     LinkedList<Method.T> newMethods = new LinkedList<>();
     for (ast.Ast.Method.T m : c.methods) {
-      m.accept(this);
-      newMethods.add(this.method);
+      walk(m);
+      then(() -> newMethods.add(this.method));
     }
-    this.classs = new ClassSingle(c.id, c.extendss, newDecs, newMethods);
+    then(() -> this.classs = new ClassSingle(c.id, c.extendss, newDecs, newMethods));
   }
 
   // main class
   @Override
   public void visit(ast.Ast.MainClass.MainClassSingle c) {
-    c.stm.accept(this);
-    this.mainClass = new MainClassSingle(c.id, c.arg, this.stms);
-    this.stms = new LinkedList<>();
+    walk(c.stm);
+    then(() -> {
+      this.mainClass = new MainClassSingle(c.id, c.arg, this.stms);
+      this.stms = new LinkedList<>();
+    });
   }
 
   // program
@@ -399,14 +447,14 @@ public class TranslateVisitor implements ast.Visitor {
     scanProgram(p);
 
     // do translations
-    p.mainClass.accept(this);
+    walk(p.mainClass);
 
     LinkedList<Class.T> newClasses = new LinkedList<>();
     for (ast.Ast.Class.T classes : p.classes) {
-      classes.accept(this);
-      newClasses.add(this.classs);
+      walk(classes);
+      then(() -> newClasses.add(this.classs));
     }
-    this.program = new ProgramSingle(this.mainClass, newClasses);
+    then(() -> this.program = new ProgramSingle(this.mainClass, newClasses));
   }
 
   // /////////////////////////////////////////////////////
@@ -417,47 +465,22 @@ public class TranslateVisitor implements ast.Visitor {
     // enter "main" into the table.
   }
 
-  private void scanClasses(LinkedList<ast.Ast.Class.T> cs) {
-    // put empty chuncks into the table
+  private void scanClasses(util.Seq<ast.Ast.Class.T> cs) {
+    // the fields and methods of each class, inherited ones included,
+    // as the class table of the elaborator lays them out
     for (ast.Ast.Class.T c : cs) {
       ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
       this.table.init(cc.id, cc.extendss);
     }
-
-    // put class fields and methods into the table
-    for (ast.Ast.Class.T c : cs) {
-      ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
-      LinkedList<Dec.T> newDecs = new LinkedList<>();
-      for (ast.Ast.Dec.T dec : cc.decs) {
-        dec.accept(this);
-        newDecs.add(this.dec);
-      }
-      this.table.initDecs(cc.id, newDecs);
-
-      // all methods
-      LinkedList<ast.Ast.Method.T> methods = cc.methods;
-      for (ast.Ast.Method.T mthd : methods) {
-        ast.Ast.Method.MethodSingle m = (ast.Ast.Method.MethodSingle) mthd;
-        LinkedList<Dec.T> newArgs = new LinkedList<>();
-        for (ast.Ast.Dec.T arg : m.formals) {
-          arg.accept(this);
-          newArgs.add(this.dec);
-        }
-        m.retType.accept(this);
-        Type.T newRet = this.type;
-        this.table.initMethod(cc.id, newRet, newArgs, m.id);
-      }
-    }
-
-    // calculate all inheritance information
-    for (ast.Ast.Class.T c : cs) {
-      ast.Ast.Class.ClassSingle cc = (ast.Ast.Class.ClassSingle) c;
-      this.table.inherit(cc.id);
-    }
   }
 
   private void scanProgram(ast.Ast.Program.T p) {
     ast.Ast.Program.ProgramSingle pp = (ast.Ast.Program.ProgramSingle) p;
+    this.table = new ClassTable(this.classTable != null ? this.classTable
+        : elaborator.ClassTable.of(pp), t -> {
+      t.accept(this);
+      return this.type;
+    });
     scanMain(pp.mainClass);
     scanClasses(pp.classes);
   }
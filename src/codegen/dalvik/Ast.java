@@ -1,6 +1,7 @@
 package codegen.dalvik;
 
 import util.Label;
+import util.Symbol;
 
 import java.util.LinkedList;
 
@@ -12,15 +13,15 @@ public class Ast {
     }
 
     public static class ClassType extends T {
-      public String id;
+      public Symbol id;
 
-      public ClassType(String id) {
+      public ClassType(Symbol id) {
         this.id = id;
       }
 
       @Override
       public String toString() {
-        return this.id;
+        return this.id.toString();
       }
 
       @Override
@@ -68,9 +69,9 @@ public class Ast {
 
     public static class DecSingle extends T {
       public Type.T type;
-      public String id;
+      public Symbol id;
 
-      public DecSingle(Type.T type, String id) {
+      public DecSingle(Type.T type, Symbol id) {
         this.type = type;
         this.id = id;
       }
@@ -165,12 +166,12 @@ public class Ast {
     }
 
     public static class Invokevirtual extends T {
-      public String f;
-      public String c;
+      public Symbol f;
+      public Symbol c;
       public LinkedList<Type.T> at;
       public Type.T rt;
 
-      public Invokevirtual(String f, String c, LinkedList<Type.T> at, Type.T rt) {
+      public Invokevirtual(Symbol f, Symbol c, LinkedList<Type.T> at, Type.T rt) {
         this.f = f;
         this.c = c;
         this.at = at;
@@ -241,9 +242,9 @@ public class Ast {
 
     public static class NewInstance extends T {
       public String dst;
-      public String c;
+      public Symbol c;
 
-      public NewInstance(String dst, String c) {
+      public NewInstance(String dst, Symbol c) {
         this.dst = dst;
         this.c = c;
       }
@@ -319,15 +320,15 @@ public class Ast {
 
     public static class MethodSingle extends T {
       public Type.T retType;
-      public String id;
-      public String classId;
+      public Symbol id;
+      public Symbol classId;
       public LinkedList<Dec.T> formals;
       public LinkedList<Dec.T> locals;
       public LinkedList<Stm.T> stms;
       public int index; // number of index
       public int retExp;
 
-      public MethodSingle(Type.T retType, String id, String classId,
+      public MethodSingle(Type.T retType, Symbol id, Symbol classId,
                           LinkedList<Dec.T> formals, LinkedList<Dec.T> locals,
                           LinkedList<Stm.T> stms, int retExp, int index) {
         this.retType = retType;
@@ -355,12 +356,12 @@ public class Ast {
     }
 
     public static class ClassSingle extends T {
-      public String id;
-      public String extendss; // null for non-existing "extends"
+      public Symbol id;
+      public Symbol extendss; // null for non-existing "extends"
       public LinkedList<Dec.T> decs;
       public LinkedList<Method.T> methods;
 
-      public ClassSingle(String id, String extendss, LinkedList<Dec.T> decs,
+      public ClassSingle(Symbol id, Symbol extendss, LinkedList<Dec.T> decs,
                          LinkedList<Method.T> methods) {
         this.id = id;
         this.extendss = extendss;
@@ -383,11 +384,11 @@ public class Ast {
     }
 
     public static class MainClassSingle extends T {
-      public String id;
-      public String arg;
+      public Symbol id;
+      public Symbol arg;
       public LinkedList<Stm.T> stms;
 
-      public MainClassSingle(String id, String arg, LinkedList<Stm.T> stms) {
+      public MainClassSingle(Symbol id, Symbol arg, LinkedList<Stm.T> stms) {
         this.id = id;
         this.arg = arg;
         this.stms = stms;
@@ -8,15 +8,17 @@ import codegen.dalvik.Ast.MainClass.MainClassSingle;
 import codegen.dalvik.Ast.Method.MethodSingle;
 import codegen.dalvik.Ast.Program.ProgramSingle;
 import codegen.dalvik.Ast.Stm.*;
+import control.CompilationContext;
 import util.Label;
-import util.Temp;
+import util.Symbol;
 
 import java.util.LinkedList;
 
 // Given a Java AST, translate it into Dalvik bytecode.
 
 public class TranslateVisitor implements ast.Visitor {
-  private String classId;
+  private final CompilationContext ctx;
+  private Symbol classId;
   private Type.T type; // type after translation
   private Dec.T dec;
   // these two fields are expression-related: after
@@ -31,7 +33,8 @@ public class TranslateVisitor implements ast.Visitor {
   private MainClass.T mainClass;
   public Program.T program;
 
-  public TranslateVisitor() {
+  public TranslateVisitor(CompilationContext ctx) {
+    this.ctx = ctx;
     this.classId = null;
     this.type = null;
     this.dec = null;
@@ -45,7 +48,7 @@ public class TranslateVisitor implements ast.Visitor {
     this.program = null;
   }
 
-  static int count = 0;
+  private int count = 0;
 
   String getTemp() {
     // however, we should check that "count<=256"
@@ -58,7 +61,7 @@ public class TranslateVisitor implements ast.Visitor {
 
   // utility functions
   private void emitDec(Type.T ty, String id) {
-    this.tmpVars.addLast(new DecSingle(ty, id));
+    this.tmpVars.addLast(new DecSingle(ty, Symbol.symbol(id)));
   }
 
   private void emit(T s) {
@@ -104,7 +107,7 @@ public class TranslateVisitor implements ast.Visitor {
   public void visit(ast.Ast.Exp.Id e) {
     e.type.accept(this);
     ;
-    this.evar = e.id;
+    this.evar = e.id.toString();
     this.etype = this.type;
     // but what about this is a field?
     return;
@@ -116,12 +119,12 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Lt e) {
-    Label tl = new Label(), fl = new Label(), el = new Label();
+    Label tl = ctx.newLabel(), fl = ctx.newLabel(), el = ctx.newLabel();
     e.left.accept(this);
     String lname = this.evar;
     e.right.accept(this);
     String rname = this.evar;
-    String newname = util.Temp.next();
+    String newname = ctx.newTemp();
     this.evar = newname;
     this.etype = new Type.Int();
     emit(new Iflt(lname, rname, tl));
@@ -141,7 +144,7 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.NewObject e) {
-    String newname = Temp.next();
+    String newname = ctx.newTemp();
     this.evar = newname;
     this.etype = new Type.ClassType(e.id);
     emit(new NewInstance(newname, e.id));
@@ -154,7 +157,7 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Exp.Num e) {
-    String newname = Temp.next();
+    String newname = ctx.newTemp();
     this.evar = newname;
     this.etype = new Type.Int();
     emitDec(this.type, newname);
@@ -168,7 +171,7 @@ public class TranslateVisitor implements ast.Visitor {
     String left = this.evar;
     e.right.accept(this);
     String right = this.evar;
-    String newname = Temp.next();
+    String newname = ctx.newTemp();
     this.evar = newname;
     this.etype = new Type.Int();
     emitDec(this.etype, this.evar);
@@ -187,7 +190,7 @@ public class TranslateVisitor implements ast.Visitor {
     String left = this.evar;
     e.right.accept(this);
     String right = this.evar;
-    String newname = Temp.next();
+    String newname = ctx.newTemp();
     this.evar = newname;
     this.etype = new Type.Int();
     emit(new Mulint(newname, left, right));
@@ -207,9 +210,9 @@ public class TranslateVisitor implements ast.Visitor {
     s.type.accept(this);
     Type.T ty = this.type;
     if (ty instanceof Type.Int) {
-      emit(new Move16(s.id, right));
+      emit(new Move16(s.id.toString(), right));
     } else {
-      emit(new Moveobject16(s.id, right));
+      emit(new Moveobject16(s.id.toString(), right));
     }
     return;
   }
@@ -224,7 +227,7 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Stm.If s) {
-    Label tl = new Label(), fl = new Label(), el = new Label();
+    Label tl = ctx.newLabel(), fl = ctx.newLabel(), el = ctx.newLabel();
 
     s.condition.accept(this);
     String evar = this.evar;
@@ -241,7 +244,7 @@ public class TranslateVisitor implements ast.Visitor {
 
   @Override
   public void visit(ast.Ast.Stm.Print s) {
-    String newname = Temp.next();
+    String newname = ctx.newTemp();
     s.exp.accept(this);
     emit(new Print(newname, this.evar));
     return;
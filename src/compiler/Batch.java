@@ -0,0 +1,173 @@
+package compiler;
+
+import control.CompilationContext;
+import util.CompileError;
+import util.Output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// The compilation of many files in one run, on a pool of "jobs"
+// threads. The files are independent: each one is a whole program,
+// compiled as if alone.
+//
+// A line is printed for each file, in the order they were given, with
+// the time it took; then its errors, if any; then a summary.
+//
+// The generated files all go to the same directory, so two files that
+// generate the same one (the same class, with "-codegen bytecode", or
+// the same "-output") would overwrite each other: both of them fail
+// instead. A file given twice is compiled once.
+//
+// Only the errors and the time of a compilation are kept until it is
+// printed, not its program, so that a batch holds no more programs at
+// once than it has jobs, however many files it compiles.
+public class Batch {
+  private Batch() {
+  }
+
+  // The files listed in "manifest", one per line, relative to the
+  // directory of the manifest. Blank lines and lines starting with
+  // '#' are skipped.
+  public static List<String> manifest(String manifest) {
+    Path path = Paths.get(manifest);
+    Path dir = path.toAbsolutePath().getParent();
+    List<String> files = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(path)) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#"))
+          continue;
+        files.add(dir.resolve(line).toString());
+      }
+    } catch (IOException e) {
+      throw new CompileError("cannot read " + manifest + ": " + e.getMessage(), e);
+    }
+    return files;
+  }
+
+  // Compile all of "files" with the options of "options", and return
+  // the exit status: 1 if any of them failed, 0 otherwise.
+  public static int run(List<String> files, int jobs,
+                        CompilationContext options, Output output) {
+    // what the phases dump goes to the same place, so it would be
+    // mixed up
+    if (options.dumpAst || options.elabClassTable
+        || options.elabMethodTable || options.lexerDump)
+      jobs = 1;
+    Set<Path> given = new HashSet<>();
+    List<String> unique = new ArrayList<>();
+    for (String fname : files)
+      if (given.add(Paths.get(fname).toAbsolutePath().normalize()))
+        unique.add(fname);
+    files = unique;
+    jobs = Math.max(1, Math.min(jobs, files.size()));
+
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(jobs);
+    // the generated files, by name: the file that generated it first
+    Map<String, String> owners = new ConcurrentHashMap<>();
+    // the errors of the files whose generated files were claimed again
+    // by a later one
+    Map<String, List<String>> clashes = new ConcurrentHashMap<>();
+    List<Future<Done>> results = new ArrayList<>();
+    for (String fname : files) {
+      Compiler compiler = new Compiler(options, claim(output, fname, owners, clashes));
+      results.add(pool.submit(() -> new Done(compiler.compile(fname))));
+    }
+
+    // a clash is known only once both files are compiled, so all of
+    // them are, before anything is printed
+    List<Done> done = new ArrayList<>();
+    List<String> crashes = new ArrayList<>();
+    try {
+      for (Future<Done> f : results) {
+        try {
+          done.add(f.get());
+          crashes.add(null);
+        } catch (ExecutionException e) {
+          // a bug in the compiler, not an error in the program: it
+          // fails this file only
+          done.add(null);
+          crashes.add("internal compiler error: " + e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    } finally {
+      pool.shutdownNow();
+    }
+
+    int failed = 0;
+    long busy = 0;
+    for (int i = 0; i < files.size(); i++) {
+      String fname = files.get(i);
+      if (crashes.get(i) != null) {
+        failed++;
+        options.out.printf("%-6s %12s  %s%n", "FAILED", "", fname);
+        options.out.println("    " + crashes.get(i));
+        continue;
+      }
+      Done result = done.get(i);
+      List<String> errors = new ArrayList<>(result.diagnostics);
+      errors.addAll(clashes.getOrDefault(fname, List.of()));
+      busy += result.nanos;
+      if (!errors.isEmpty())
+        failed++;
+      options.out.printf("%-6s %9.1f ms  %s%n", errors.isEmpty() ? "ok" : "FAILED",
+          result.nanos / 1e6, result.fileName);
+      for (String d : errors)
+        options.out.println("    " + d.trim().replace("\n", "\n    "));
+    }
+
+    long wall = System.nanoTime() - start;
+    options.out.printf("%d files, %d failed, %d jobs: %.1f ms, %.1f ms of compilation (%.1f ms per file)%n",
+        files.size(), failed, jobs, wall / 1e6, busy / 1e6,
+        busy / 1e6 / Math.max(1, files.size()));
+    return failed == 0 ? 0 : 1;
+  }
+
+  // what is kept of a compilation, once its output is written
+  private static final class Done {
+    final String fileName;
+    final long nanos;
+    final List<String> diagnostics;
+
+    Done(Result result) {
+      this.fileName = result.fileName();
+      this.nanos = result.nanos();
+      this.diagnostics = List.copyOf(result.diagnostics());
+    }
+  }
+
+  // "output", for the file "fname": a generated file that another file
+  // generated already is not written, and is an error of both files.
+  private static Output claim(Output output, String fname,
+                              Map<String, String> owners,
+                              Map<String, List<String>> clashes) {
+    return name -> {
+      String owner = owners.putIfAbsent(
+          Paths.get(name).toAbsolutePath().normalize().toString(), fname);
+      if (owner != null && !owner.equals(fname)) {
+        clashes.computeIfAbsent(owner, k -> new CopyOnWriteArrayList<>())
+            .add(name + " is also generated by " + fname);
+        throw new CompileError(name + " is also generated by " + owner);
+      }
+      return output.open(name);
+    };
+  }
+}
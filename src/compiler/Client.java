@@ -0,0 +1,56 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+// The client of a compile server (see "Server"): it sends its command
+// line, less "-connect", prints what comes back, and returns the exit
+// status of the compilation.
+public class Client {
+  private Client() {
+  }
+
+  public static int forward(String where, String[] args) {
+    ArrayList<String> forwarded = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-connect"))
+        i++;
+      else
+        forwarded.add(args[i]);
+    }
+
+    try (SocketChannel channel = SocketChannel.open(Server.address(where))) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel)));
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Channels.newInputStream(channel)));
+      out.writeUTF(System.getProperty("user.dir"));
+      out.writeInt(forwarded.size());
+      for (String arg : forwarded)
+        out.writeUTF(arg);
+      out.flush();
+
+      while (true) {
+        int kind = in.readByte();
+        if (kind == 'x')
+          return in.readInt();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        PrintStream stream = kind == 'e' ? System.err : System.out;
+        stream.write(bytes);
+        stream.flush();
+      }
+    } catch (IOException e) {
+      System.out.println("Error: cannot compile on the server at " + where
+          + ": " + e.getMessage());
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package compiler;
+
+import ast.Acceptable;
+import ast.Ast.Program;
+import ast.Cache;
+import ast.Flat;
+import control.CompilationContext;
+import lexer.Lexer;
+import parser.Parser;
+import util.CompileError;
+import util.Output;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+
+// The Tiger compiler, as a library.
+//
+// A "Compiler" runs all the phases on one program at a time, with the
+// options of a "CompilationContext", and never exits: the errors of a
+// program end up in the diagnostics of its "Result". So one JVM, once
+// warmed up, can compile any number of programs, and one "Compiler" can
+// be used by several threads at once: each compilation has a context of
+// its own.
+//
+// The generated files are written to an "Output": the working
+// directory for "Tiger", or, by default, the artifacts of the result.
+public class Compiler {
+  private final CompilationContext options;
+  private final Output output; // null: into the result
+
+  // a compiler with the options now in "Control"
+  public Compiler() {
+    this(new CompilationContext(), null);
+  }
+
+  public Compiler(Output output) {
+    this(new CompilationContext(), output);
+  }
+
+  public Compiler(CompilationContext options, Output output) {
+    this.options = options;
+    this.output = output;
+  }
+
+  // whether or not to memory-map the file "fname", see "-mmap"
+  private static boolean useMmap(String fname, CompilationContext ctx) {
+    switch (ctx.mmap) {
+      case ALWAYS:
+        return true;
+      case NEVER:
+        return false;
+      default:
+        return new java.io.File(fname).length() >= ctx.mmapThreshold;
+    }
+  }
+
+  // Read the whole file "fname". A mapped file stays valid after the
+  // channel is closed, and its contents are never copied onto the
+  // Java heap.
+  public static ByteBuffer read(String fname, CompilationContext ctx) {
+    try {
+      if (useMmap(fname, ctx)) {
+        try (FileChannel channel = FileChannel.open(Paths.get(fname))) {
+          return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+      }
+      try (InputStream fstream = new BufferedInputStream(new FileInputStream(fname))) {
+        return Lexer.readAll(fstream);
+      }
+    } catch (IOException e) {
+      throw new CompileError("cannot read " + fname + ": " + e.getMessage(), e);
+    }
+  }
+
+  public Result compile(String fname) {
+    return compile(fname, null);
+  }
+
+  // compile "source", the contents of the file "fname", or the file
+  // itself if "source" is null
+  public Result compile(String fname, ByteBuffer source) {
+    long start = System.nanoTime();
+    CompilationContext ctx = options.forFile(fname);
+    Result result = new Result(ctx);
+    try {
+      if (source == null)
+        source = read(fname, ctx);
+      run(ctx, source, result);
+    } catch (CompileError e) {
+      ctx.error(e.getMessage());
+    } catch (RuntimeException | StackOverflowError e) {
+      // a bug of the compiler, or input it cannot handle: it fails
+      // this compilation only, not the server or the batch running it
+      ctx.error("internal compiler error: " + e);
+    }
+    result.nanos = System.nanoTime() - start;
+    return result;
+  }
+
+  private void run(CompilationContext ctx, ByteBuffer source, Result result) {
+    // look for the elaborated program in the cache, if any
+    Cache cache = null;
+    String key = null;
+    Flat cached = null;
+    if (ctx.cacheDir != null) {
+      cache = new Cache(ctx.cacheDir, ctx.err);
+      key = Cache.key(source, ctx.lazyMethods);
+      cached = cache.load(key);
+    }
+
+    // parsing the file, get an AST. With "-lazy", only the methods
+    // that "main" reaches are parsed, as they are elaborated.
+    Program.T theAst = null;
+    elaborator.ElaboratorVisitor elab = null;
+    if (cached == null && ctx.lazyMethods) {
+      Parser parser = new Parser(ctx, source);
+      theAst = parser.skim();
+      elab = new elaborator.ElaboratorVisitor(ctx, parser::parseBody);
+      theAst.accept(elab);
+    } else if (cached == null) {
+      theAst = new Parser(ctx, source).parse();
+    }
+
+    // from now on, the phases see the program through "accept": as
+    // the tree itself, or as its flat form, the tree being dropped
+    Acceptable program = theAst;
+    if (cached != null) {
+      program = cached;
+    } else if (ctx.flatAst) {
+      program = Flat.encode(theAst);
+      theAst = null;
+    }
+
+    // pretty printing the AST, if necessary
+    if (ctx.dumpAst) {
+      ast.PrettyPrintVisitor pp = new ast.PrettyPrintVisitor(ctx.out);
+      program.accept(pp);
+    }
+
+    // elaborate the AST, report all possible errors. A program
+    // from the cache is already elaborated.
+    if (cached == null && elab == null) {
+      elab = new elaborator.ElaboratorVisitor(ctx);
+      program.accept(elab);
+    }
+    if (cached == null && cache != null)
+      cache.store(key, program instanceof Flat ? (Flat) program
+          : Flat.encode(theAst));
+    result.program = program;
+    // the code generators reuse the class table of the elaborator,
+    // or build their own from a cached program
+    elaborator.ClassTable classTable = elab != null ? elab.classTable : null;
+
+    // code generation
+    Output out = this.output != null ? this.output : result.memory();
+    switch (ctx.codegen) {
+      case Bytecode:
+        codegen.bytecode.TranslateVisitor trans = new codegen.bytecode.TranslateVisitor(ctx, classTable);
+        program.accept(trans);
+        codegen.bytecode.Ast.Program.T bytecodeAst = trans.program;
+        codegen.bytecode.PrettyPrintVisitor ppbc = new codegen.bytecode.PrettyPrintVisitor(trans.getClassTable(), out);
+        bytecodeAst.accept(ppbc);
+        break;
+      case C:
+        codegen.C.TranslateVisitor transC = new codegen.C.TranslateVisitor(ctx, classTable);
+        program.accept(transC);
+        codegen.C.Ast.Program.T cAst = transC.program;
+        codegen.C.PrettyPrintVisitor ppc = new codegen.C.PrettyPrintVisitor(transC, out);
+        cAst.accept(ppc);
+        break;
+      case Dalvik:
+        // similar
+        break;
+      case X86:
+        // similar
+        break;
+      default:
+        break;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package compiler;
+
+import control.CommandLine;
+import control.CompilationContext;
+import control.Control;
+import lexer.Lexer;
+import lexer.Token;
+import util.CompileError;
+import util.Output;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+// What "java Tiger <args>" does, without exiting: the exit status is
+// returned instead. The compile server runs it for its clients, in
+// their working directory.
+public class Driver {
+  private Driver() {
+  }
+
+  // Run the command line "args". The files it names are relative to
+  // "dir", or to the working directory if "dir" is null.
+  public static int run(String[] args, Path dir) {
+    return run(args, dir, System.out, System.err);
+  }
+
+  // the same, printing to "out" and "err": the compilation prints
+  // there too, from whichever thread runs it
+  public static int run(String[] args, Path dir, PrintStream out, PrintStream err) {
+    // ///////////////////////////////////////////////////////
+    // handle command line arguments. They are scanned into "Control",
+    // which is shared by all the runs of a compile server, so the
+    // options are taken out of it at once, and only read from the
+    // context "options" thereafter.
+    CommandLine cmd = new CommandLine(out);
+    String fname;
+    CompilationContext options;
+    String listen, connect, manifest;
+    int threads, jobs;
+    boolean testFac, testLexer, testIncremental;
+    synchronized (Control.class) {
+      Control.reset();
+      try {
+        fname = cmd.scan(args);
+      } catch (CommandLine.Stop e) {
+        return e.status;
+      }
+      if (dir != null && Control.ConAst.cacheDir != null)
+        Control.ConAst.cacheDir = dir.resolve(Control.ConAst.cacheDir).toString();
+      options = new CompilationContext(out, err);
+      listen = Control.ConServer.listen;
+      connect = Control.ConServer.connect;
+      threads = Control.ConServer.threads;
+      jobs = Control.ConBatch.jobs;
+      manifest = Control.ConBatch.manifest;
+      testFac = Control.ConAst.testFac;
+      testLexer = Control.ConLexer.test;
+      testIncremental = Control.ConParser.testIncremental;
+    }
+
+    // the files, relative to "dir"
+    Output output = Output.FILES;
+    if (dir != null) {
+      if (fname != null)
+        fname = dir.resolve(fname).toString();
+      output = name -> Output.FILES.open(dir.resolve(name).toString());
+    }
+
+    // /////////////////////////////////////////////////////
+    // serve compilations, or send this one to a server
+    if (listen != null || connect != null) {
+      if (dir != null) {
+        out.println("Error: -server and -connect cannot go through a server");
+        return 1;
+      }
+      if (listen != null && connect != null) {
+        out.println("Error: -server and -connect do not go together");
+        return 1;
+      }
+      if (listen != null)
+        return Server.serve(listen, threads);
+      return Client.forward(connect, args);
+    }
+
+    // /////////////////////////////////////////////////////
+    // to test the pretty printer on the "test/Fac.java" program
+    if (testFac) {
+      CompilationContext ctx = options.forFile(null);
+      out.println("Testing the Tiger compiler on Fac.java starting:");
+      ast.PrettyPrintVisitor pp = new ast.PrettyPrintVisitor(out);
+      ast.Fac.prog.accept(pp);
+
+      // elaborate the given program, this step is necessary
+      // for that it will annotate the AST with some
+      // informations used by later phase.
+      elaborator.ElaboratorVisitor elab = new elaborator.ElaboratorVisitor(ctx);
+      ast.Fac.prog.accept(elab);
+
+      // Compile this program to C.
+      out.println("code generation starting");
+      // code generation
+      switch (ctx.codegen) {
+        case Bytecode:
+          out.println("bytecode codegen");
+          codegen.bytecode.TranslateVisitor trans = new codegen.bytecode.TranslateVisitor(ctx);
+          ast.Fac.prog.accept(trans);
+          codegen.bytecode.Ast.Program.T bytecodeAst = trans.program;
+          codegen.bytecode.PrettyPrintVisitor ppbc = new codegen.bytecode.PrettyPrintVisitor(trans.getClassTable(), output);
+          bytecodeAst.accept(ppbc);
+          break;
+        case C:
+          out.println("C codegen");
+          codegen.C.TranslateVisitor transC = new codegen.C.TranslateVisitor(ctx);
+          ast.Fac.prog.accept(transC);
+          codegen.C.Ast.Program.T cAst = transC.program;
+          codegen.C.PrettyPrintVisitor ppc = new codegen.C.PrettyPrintVisitor(transC, output);
+          cAst.accept(ppc);
+          break;
+        case Dalvik:
+          // similar
+          break;
+        case X86:
+          // similar
+          break;
+        default:
+          break;
+      }
+      out.println("Testing the Tiger compiler on Fac.java finished.");
+      return 1;
+    }
+
+    // /////////////////////////////////////////////////////
+    // several files, or a manifest: compile them all
+    if (cmd.files().size() > 1 || manifest != null) {
+      if (options.outputName != null) {
+        out.println("Error: -output names one file, not one for each");
+        return 1;
+      }
+      java.util.List<String> files = new java.util.ArrayList<>();
+      for (String f : cmd.files())
+        files.add(dir == null ? f : dir.resolve(f).toString());
+      try {
+        if (manifest != null) {
+          files.addAll(Batch.manifest(dir == null ? manifest
+              : dir.resolve(manifest).toString()));
+        }
+      } catch (CompileError e) {
+        out.println(e.getMessage());
+        return 1;
+      }
+      return Batch.run(files, jobs, options, output);
+    }
+
+    if (fname == null) {
+      cmd.usage();
+      return 0;
+    }
+
+    // /////////////////////////////////////////////////////
+    // it would be helpful to be able to test the lexer
+    // independently.
+    if (testLexer) {
+      out.println("Testing the lexer. All tokens:");
+      try {
+        CompilationContext ctx = options.forFile(fname);
+        Lexer lexer = new Lexer(ctx, Compiler.read(fname, ctx));
+        Token token = lexer.nextToken();
+
+        while (token.kind != Token.Kind.TOKEN_EOF) {
+          out.println(token.toString());
+          token = lexer.nextToken();
+        }
+      } catch (CompileError e) {
+        out.println(e.getMessage());
+      }
+      return 1;
+    }
+
+    // /////////////////////////////////////////////////////
+    // to test the incremental parser on the file
+    if (testIncremental) {
+      try {
+        CompilationContext ctx = options.forFile(fname);
+        java.nio.ByteBuffer buf = Compiler.read(fname, ctx);
+        byte[] source = new byte[buf.remaining()];
+        buf.get(source);
+        return parser.IncrementalParser.test(ctx, source) ? 0 : 1;
+      } catch (CompileError e) {
+        out.println(e.getMessage());
+        return 1;
+      }
+    }
+
+    // /////////////////////////////////////////////////////////
+    // normal compilation phases.
+    Result result = new Compiler(options, output).compile(fname);
+    if (!result.ok()) {
+      for (String d : result.diagnostics())
+        out.println(d);
+      return 1;
+    }
+
+    // Lab3, exercise 6: add some glue code to
+    // call gcc to compile the generated C or x86
+    // file, or call java to run the bytecode file,
+    // or dalvik to run the dalvik bytecode.
+    // Your code here:
+
+    return 0;
+  }
+}
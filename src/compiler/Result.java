@@ -0,0 +1,66 @@
+package compiler;
+
+import control.CompilationContext;
+import util.Output;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// What the compilation of one program produced.
+public class Result {
+  private final CompilationContext ctx;
+  private final Map<String, String> artifacts;
+  ast.Acceptable program;
+  long nanos;
+
+  Result(CompilationContext ctx) {
+    this.ctx = ctx;
+    this.artifacts = new LinkedHashMap<>();
+    this.program = null;
+    this.nanos = 0;
+  }
+
+  // the file that was compiled
+  public String fileName() {
+    return ctx.fileName;
+  }
+
+  // whether the program was compiled without error
+  public boolean ok() {
+    return ctx.diagnostics().isEmpty();
+  }
+
+  // the errors, in the order they were found
+  public List<String> diagnostics() {
+    return ctx.diagnostics();
+  }
+
+  // the generated files, by name, when the compiler keeps them in
+  // memory; in the order they were written
+  public Map<String, String> artifacts() {
+    return Collections.unmodifiableMap(artifacts);
+  }
+
+  // the elaborated program, or null if it was not elaborated
+  public ast.Acceptable program() {
+    return program;
+  }
+
+  // how long the compilation took, in nanoseconds
+  public long nanos() {
+    return nanos;
+  }
+
+  // an output that keeps the generated files in "artifacts"
+  Output memory() {
+    return name -> new StringWriter() {
+      @Override
+      public void close() {
+        artifacts.put(name, toString());
+      }
+    };
+  }
+}
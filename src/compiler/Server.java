@@ -0,0 +1,193 @@
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+// A compile server: one JVM, started once with "-server", that keeps
+// compiling for the clients that connect to it ("-connect"). Its
+// classes stay loaded and its code stays compiled by the JIT, so a
+// compilation costs neither JVM startup nor warmup.
+//
+// The server listens on a Unix-domain socket. A client has the server
+// read and write files as the user running it, anywhere, so it had
+// better be that user: the socket is made private to it (mode 0600),
+// and a client of another user is turned away. (There is no port: any
+// local user could connect to it.) A socket file left by a server that
+// is gone is replaced, but not one that a server still answers on.
+// A client sends its working directory and its command line, which the
+// server runs with "Driver.run" in that directory. Everything the
+// compilation prints goes back to the client as it is printed,
+// followed by the exit status:
+//   request:  UTF dir, int n, n * UTF arg
+//   response: any number of (byte 'o' or 'e', int len, len * byte),
+//             for the standard output or error, then (byte 'x', int status)
+//
+// Connections are served by a pool of threads, and their compilations
+// run at the same time: each one has a "CompilationContext" of its own,
+// holding the streams of its client, so that what it prints goes there
+// whichever thread prints it.
+public class Server {
+  private Server() {
+  }
+
+  static UnixDomainSocketAddress address(String where) {
+    return UnixDomainSocketAddress.of(where);
+  }
+
+  // the permissions of the socket: to its owner only
+  private static final String PRIVATE = "rw-------";
+
+  // Serve on "where" until killed; return only if that fails.
+  public static int serve(String where, int threads) {
+    UnixDomainSocketAddress address = address(where);
+    Path path = address.getPath();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      // the socket file of a previous server, but nothing else
+      if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+        if (!isSocket(path)) {
+          System.out.println("Error: cannot serve on " + where + ": it is not a socket");
+          return 1;
+        }
+        if (answers(address)) {
+          System.out.println("Error: cannot serve on " + where + ": a server is running there");
+          return 1;
+        }
+        Files.delete(path);
+      }
+      server.bind(address);
+      path.toFile().deleteOnExit();
+      Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(PRIVATE));
+      UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+      System.out.println("Tiger server listening on " + where);
+      while (true) {
+        SocketChannel client = server.accept();
+        // a client that connected before the socket was made private
+        if (!ownedBy(client, owner)) {
+          client.close();
+          continue;
+        }
+        pool.execute(() -> handle(client));
+      }
+    } catch (IOException e) {
+      System.out.println("Error: cannot serve on " + where + ": " + e.getMessage());
+      return 1;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // whether a server accepts connections on "address"
+  private static boolean answers(UnixDomainSocketAddress address) {
+    try {
+      SocketChannel.open(address).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  // whether the file "path" is a Unix-domain socket
+  private static boolean isSocket(Path path) throws IOException {
+    int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+    return (mode & 0170000) == 0140000;
+  }
+
+  // whether the process at the other end of "client" runs as "owner"
+  private static boolean ownedBy(SocketChannel client, UserPrincipal owner) {
+    try {
+      UnixDomainPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED);
+      return peer.user().getName().equals(owner.getName());
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  private static void handle(SocketChannel channel) {
+    try (channel) {
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Channels.newInputStream(channel)));
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel)));
+      Path dir = Paths.get(in.readUTF());
+      String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++)
+        args[i] = in.readUTF();
+
+      int status = compile(args, dir, out);
+      out.writeByte('x');
+      out.writeInt(status);
+      out.flush();
+    } catch (IOException e) {
+      // the client went away
+    }
+  }
+
+  private static int compile(String[] args, Path dir, DataOutputStream out) {
+    PrintStream o = new PrintStream(new BufferedOutputStream(new Frames(out, 'o')), true);
+    PrintStream e = new PrintStream(new BufferedOutputStream(new Frames(out, 'e')), true);
+    try {
+      return Driver.run(args, dir, o, e);
+    } catch (RuntimeException | StackOverflowError x) {
+      // a bug in the compiler: tell the client, and keep serving
+      x.printStackTrace(e);
+      return 1;
+    } finally {
+      o.flush();
+      e.flush();
+    }
+  }
+
+  // the bytes written to it, as frames of one kind
+  private static class Frames extends OutputStream {
+    private final DataOutputStream out;
+    private final int kind;
+
+    Frames(DataOutputStream out, int kind) {
+      this.out = out;
+      this.kind = kind;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (out) {
+        out.writeByte(kind);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
@@ -3,8 +3,6 @@ package control;
 import control.Control.ConSlp;
 import util.Bug;
 
-import java.util.LinkedList;
-
 public class CommandLine {
   static interface F<X> {
     public void f(X x);
@@ -31,13 +29,38 @@ public class CommandLine {
     }
   }
 
-  private LinkedList<Arg<Object>> args;
+  // Thrown when the command line does not ask for a compilation: it
+  // is wrong, or asks for help. What to say has already been said.
+  public static class Stop extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final int status; // the exit status
+
+    public Stop(int status) {
+      super(null, null, false, false);
+      this.status = status;
+    }
+  }
+
+  private util.Seq<Arg<Object>> args;
+  private java.util.List<String> files;
+  private final java.io.PrintStream out; // where the usage is printed
 
-  @SuppressWarnings("unchecked")
   public CommandLine() {
+    this(System.out);
+  }
+
+  @SuppressWarnings("unchecked")
+  public CommandLine(java.io.PrintStream out) {
+    this.out = out;
     this.args = new util.Flist<Arg<Object>>()
         .list(
-            new Arg<Object>(
+            new Arg<Object>("cache", "<dir>",
+                "keep elaborated ASTs in <dir>, keyed by source hash",
+                Kind.String, (s) -> {
+              Control.ConAst.cacheDir = (String) s;
+              return;
+            }), new Arg<Object>(
                 "codegen",
                 "{bytecode|C|dalvik|x86}",
                 "which code generator to use",
@@ -53,20 +76,22 @@ public class CommandLine {
                   } else if (s.equals("x86")) {
                     control.Control.ConCodeGen.codegen = control.Control.ConCodeGen.Kind_t.X86;
                   } else {
-                    System.out.println("bad argument: " + s);
-                    output();
-                    System.exit(1);
+                    fail("bad argument: " + s);
                   }
                   return;
-                }), new Arg<Object>("dump", "{ast}",
+                }), new Arg<Object>("connect", "<path>",
+                "compile on the server at the Unix socket <path> (see -server)",
+                Kind.String, (s) -> {
+              socket((String) s);
+              Control.ConServer.connect = (String) s;
+              return;
+            }), new Arg<Object>("dump", "{ast}",
                 "dump information about the given ir", Kind.String, (ss) -> {
               String s = (String) ss;
               if (s.equals("ast")) {
                 control.Control.ConAst.dumpAst = true;
               } else {
-                System.out.println("bad argument: " + s);
-                output();
-                System.exit(1);
+                fail("bad argument: " + s);
               }
               return;
             }), new Arg<Object>("elab", "<arg>",
@@ -77,20 +102,52 @@ public class CommandLine {
               } else if (s.equals("methodTable"))
                 Control.ConAst.elabMethodTable = true;
               else {
-                System.out.println("bad argument: " + s);
-                output();
-                System.exit(1);
+                fail("bad argument: " + s);
               }
               return;
+            }), new Arg<Object>("elabParallel", "<methods>",
+                "elaborate this many methods or more on all cores (0: never)",
+                Kind.Int, (s) -> {
+              Control.ConAst.parallelThreshold = (Integer) s;
+              return;
+            }), new Arg<Object>("flatAst", null,
+                "keep the AST in a flat arena between phases", Kind.Empty, (s) -> {
+              Control.ConAst.flatAst = true;
+              return;
             }), new Arg<Object>("help", null, "show this help information",
                 Kind.Empty, (s) -> {
               usage();
-              System.exit(1);
+              throw new Stop(1);
+            }), new Arg<Object>("jobs", "<n>",
+                "compile that many files at once (with several files)",
+                Kind.Int, (s) -> {
+              Control.ConBatch.jobs = (Integer) s;
+              return;
+            }), new Arg<Object>("lazy", null,
+                "parse and compile only the methods main can reach",
+                Kind.Empty, (s) -> {
+              Control.ConAst.lazyMethods = true;
               return;
             }), new Arg<Object>("lex", null,
                 "dump the result of lexical analysis", Kind.Empty, (s) -> {
               Control.ConLexer.dump = true;
               return;
+            }), new Arg<Object>("lexParallel", "<bytes>",
+                "lex sources at least this big on all cores (0: never)",
+                Kind.Int, (s) -> {
+              Control.ConLexer.parallelThreshold = (Integer) s;
+              return;
+            }), new Arg<Object>("server", "<path>",
+                "serve compilations on the Unix socket <path>",
+                Kind.String, (s) -> {
+              socket((String) s);
+              Control.ConServer.listen = (String) s;
+              return;
+            }), new Arg<Object>("serverThreads", "<n>",
+                "the number of connections the server handles at once",
+                Kind.Int, (s) -> {
+              Control.ConServer.threads = (Integer) s;
+              return;
             }), new Arg<Object>("slp", "{args|interp|compile}",
                 "run the SLP interpreter", Kind.String, (ss) -> {
               String s = (String) ss;
@@ -106,10 +163,31 @@ public class CommandLine {
               else if (s.equals("keepasm"))
                 ConSlp.keepasm = true;
               else {
-                System.out.println("bad argument: " + s);
-                output();
-                System.exit(1);
+                fail("bad argument: " + s);
+              }
+            }), new Arg<Object>("manifest", "<file>",
+                "compile the files listed in <file>, one per line",
+                Kind.String, (s) -> {
+              Control.ConBatch.manifest = (String) s;
+              return;
+            }), new Arg<Object>("mmap", "{always|auto|never}",
+                "whether or not to memory-map the source file", Kind.String, (ss) -> {
+              String s = (String) ss;
+              if (s.equals("always")) {
+                Control.ConLexer.mmap = Control.ConLexer.Mmap.ALWAYS;
+              } else if (s.equals("auto")) {
+                Control.ConLexer.mmap = Control.ConLexer.Mmap.AUTO;
+              } else if (s.equals("never")) {
+                Control.ConLexer.mmap = Control.ConLexer.Mmap.NEVER;
+              } else {
+                fail("bad argument: " + s);
               }
+              return;
+            }), new Arg<Object>("mmapThreshold", "<bytes>",
+                "map source files at least this big (with \"-mmap auto\")",
+                Kind.Int, (s) -> {
+              Control.ConLexer.mmapThreshold = (Integer) s;
+              return;
             }), new Arg<Object>("output", "<outfile>",
                 "set the name of the output file", Kind.String, (Object s) -> {
               Control.ConCodeGen.outputName = (String) s;
@@ -119,6 +197,11 @@ public class CommandLine {
                 Kind.Empty, (s) -> {
               Control.ConAst.testFac = true;
               return;
+            }), new Arg<Object>("testIncremental", null,
+                "whether or not to test the incremental parser on the file",
+                Kind.Empty, (s) -> {
+              Control.ConParser.testIncremental = true;
+              return;
             }), new Arg<Object>("testlexer", null,
                 "whether or not to test the lexer", Kind.Empty, (s) -> {
               Control.ConLexer.test = true;
@@ -126,20 +209,15 @@ public class CommandLine {
             }));
   }
 
-  // scan the command line arguments, return the file name
-  // in it. The file name should be unique.
+  // scan the command line arguments, return the first file name
+  // in it. There may be several of them, see "files".
   public String scan(String[] cargs) {
-    String filename = null;
+    this.files = new java.util.ArrayList<>();
 
     for (int i = 0; i < cargs.length; i++) {
       if (!cargs[i].startsWith("-")) {
-        if (filename == null) {
-          filename = cargs[i];
-          continue;
-        } else {
-          System.out.println("Error: can only compile one Java file a time");
-          System.exit(1);
-        }
+        this.files.add(cargs[i]);
+        continue;
       } else {
       }
 
@@ -156,9 +234,7 @@ public class CommandLine {
             break;
           default:
             if (i >= cargs.length - 1) {
-              System.out.println("Error: " + cargs[i] + ": requires an argument");
-              this.output();
-              System.exit(1);
+              fail("Error: " + cargs[i] + ": requires an argument");
             }
             i++;
             break;
@@ -172,9 +248,7 @@ public class CommandLine {
             else if (theArg.equals("false"))
               arg.action.f(new Boolean(false));
             else {
-              System.out.println("Error: " + arg.name + ": requires a boolean");
-              this.output();
-              System.exit(1);
+              fail("Error: " + arg.name + ": requires a boolean");
             }
             break;
           case Int:
@@ -182,9 +256,7 @@ public class CommandLine {
             try {
               num = Integer.parseInt(theArg);
             } catch (java.lang.NumberFormatException e) {
-              System.out.println("Error: " + arg.name + ": requires an integer");
-              this.output();
-              System.exit(1);
+              fail("Error: " + arg.name + ": requires an integer");
             }
             arg.action.f(num);
             break;
@@ -201,12 +273,29 @@ public class CommandLine {
         break;
       }
       if (!found) {
-        System.out.println("invalid option: " + cargs[i]);
-        this.output();
-        System.exit(1);
+        fail("invalid option: " + cargs[i]);
       }
     }
-    return filename;
+    return this.files.isEmpty() ? null : this.files.get(0);
+  }
+
+  // a server is on a socket, which only its user can connect to: a
+  // port would let any local user compile as that user
+  private void socket(String path) {
+    if (path.matches("[0-9]+"))
+      fail("bad argument: " + path + " (a server listens on a socket path, not on a port)");
+  }
+
+  // a bad command line: say what is wrong, and which options there are
+  private void fail(String message) {
+    out.println(message);
+    output();
+    throw new Stop(1);
+  }
+
+  // all the file names in the command line, in order
+  public java.util.List<String> files() {
+    return this.files;
   }
 
   private void outputSpace(int n) {
@@ -214,7 +303,7 @@ public class CommandLine {
       new Bug();
 
     while (n-- != 0)
-      System.out.print(" ");
+      out.print(" ");
     return;
   }
 
@@ -231,23 +320,23 @@ public class CommandLine {
       else
         ;
     }
-    System.out.println("Available options:");
+    out.println("Available options:");
     for (Arg<Object> a : this.args) {
       int current = a.name.length();
-      System.out.print("   -" + a.name + " ");
+      out.print("   -" + a.name + " ");
       if (a.option != null) {
         current += a.option.length();
-        System.out.print(a.option);
+        out.print(a.option);
       } else
         ;
       outputSpace(max - current + 1);
-      System.out.println(a.desription);
+      out.println(a.desription);
     }
     return;
   }
 
   public void usage() {
-    System.out
+    out
         .println("The Tiger compiler. Copyright (C) 2013-, SSE of USTC.\n"
             + "Usage: java Tiger [options] <filename>\n");
     output();
@@ -0,0 +1,130 @@
+package control;
+
+import util.Label;
+import util.Temp;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// What one compilation owns: the options it runs with, the counters
+// that name its temporaries and labels, and its diagnostics.
+//
+// Every phase (lexer, parser, elaborator, translators and printers)
+// is given the context of its compilation, and reads its options there
+// instead of in "Control". So compilations that run at the same time,
+// on a thread pool or in a compile server, never see each other's
+// options, names or errors.
+//
+// The options come from "Control", as set by the command line, at the
+// time the context is made.
+//
+// What a compilation prints, its dumps and its warnings, goes to the
+// streams of its context, and not to "System.out" and "System.err":
+// a compile server gives each compilation the streams of its client,
+// whichever thread runs it.
+public class CompilationContext {
+  // the file being compiled, or null
+  public final String fileName;
+
+  // the lexer
+  public final boolean lexerDump;
+  public final Control.ConLexer.Mmap mmap;
+  public final int mmapThreshold;
+  public final int parallelThreshold;
+
+  // Ast and elaborator
+  public final boolean dumpAst;
+  public final boolean flatAst;
+  public final String cacheDir;
+  public final boolean lazyMethods;
+  public final boolean elabClassTable;
+  public final boolean elabMethodTable;
+  public final int elabParallelThreshold;
+
+  // code generation
+  public final Control.ConCodeGen.Kind_t codegen;
+  public final String outputName;
+
+  // where the dumps and the warnings go
+  public final PrintStream out;
+  public final PrintStream err;
+
+  private final Temp temps;
+  private int labels;
+  private final List<String> diagnostics;
+
+  // a context with the options now in "Control", for no file yet
+  public CompilationContext() {
+    this(System.out, System.err);
+  }
+
+  // the same, printing to "out" and "err"
+  public CompilationContext(PrintStream out, PrintStream err) {
+    this(null, Control.ConLexer.dump, Control.ConLexer.mmap,
+        Control.ConLexer.mmapThreshold, Control.ConLexer.parallelThreshold,
+        Control.ConAst.dumpAst, Control.ConAst.flatAst, Control.ConAst.cacheDir,
+        Control.ConAst.lazyMethods, Control.ConAst.elabClassTable,
+        Control.ConAst.elabMethodTable, Control.ConAst.parallelThreshold,
+        Control.ConCodeGen.codegen, Control.ConCodeGen.outputName, out, err);
+  }
+
+  private CompilationContext(String fileName, boolean lexerDump,
+                             Control.ConLexer.Mmap mmap, int mmapThreshold,
+                             int parallelThreshold, boolean dumpAst,
+                             boolean flatAst, String cacheDir,
+                             boolean lazyMethods, boolean elabClassTable,
+                             boolean elabMethodTable,
+                             int elabParallelThreshold,
+                             Control.ConCodeGen.Kind_t codegen,
+                             String outputName, PrintStream out,
+                             PrintStream err) {
+    this.fileName = fileName;
+    this.lexerDump = lexerDump;
+    this.mmap = mmap;
+    this.mmapThreshold = mmapThreshold;
+    this.parallelThreshold = parallelThreshold;
+    this.dumpAst = dumpAst;
+    this.flatAst = flatAst;
+    this.cacheDir = cacheDir;
+    this.lazyMethods = lazyMethods;
+    this.elabClassTable = elabClassTable;
+    this.elabMethodTable = elabMethodTable;
+    this.elabParallelThreshold = elabParallelThreshold;
+    this.codegen = codegen;
+    this.outputName = outputName;
+    this.out = out;
+    this.err = err;
+    this.temps = new Temp();
+    this.labels = 0;
+    this.diagnostics = new ArrayList<>();
+  }
+
+  // a new compilation of "fileName", with the options of this one
+  public CompilationContext forFile(String fileName) {
+    return new CompilationContext(fileName, lexerDump, mmap, mmapThreshold,
+        parallelThreshold, dumpAst, flatAst, cacheDir, lazyMethods,
+        elabClassTable, elabMethodTable, elabParallelThreshold, codegen,
+        outputName, out, err);
+  }
+
+  // a fresh temporary, "x_0", "x_1", ...
+  public String newTemp() {
+    return temps.next();
+  }
+
+  // a fresh label
+  public Label newLabel() {
+    return new Label(labels++);
+  }
+
+  public void error(String message) {
+    diagnostics.add(message);
+  }
+
+  // the errors, in the order they were found
+  public List<String> diagnostics() {
+    return Collections.unmodifiableList(diagnostics);
+  }
+}
@@ -1,10 +1,59 @@
 package control;
 
 public class Control {
+  // Put every option back to its default, as before the command line
+  // was scanned. A compile server does this before each compilation.
+  public static void reset() {
+    ConLexer.test = false;
+    ConLexer.dump = false;
+    ConLexer.mmap = ConLexer.Mmap.AUTO;
+    ConLexer.mmapThreshold = 1 << 20;
+    ConLexer.parallelThreshold = 4 << 20;
+    ConSlp.action = ConSlp.T.NONE;
+    ConSlp.div = false;
+    ConSlp.keepasm = false;
+    ConAst.dumpAst = false;
+    ConAst.testFac = false;
+    ConAst.flatAst = false;
+    ConAst.cacheDir = null;
+    ConAst.lazyMethods = false;
+    ConAst.elabClassTable = false;
+    ConAst.elabMethodTable = false;
+    ConAst.parallelThreshold = 1024;
+    ConParser.testIncremental = false;
+    ConCodeGen.outputName = null;
+    ConCodeGen.codegen = ConCodeGen.Kind_t.C;
+    ConServer.listen = null;
+    ConServer.connect = null;
+    ConServer.threads = 4;
+    ConBatch.jobs = Runtime.getRuntime().availableProcessors();
+    ConBatch.manifest = null;
+  }
+
   // the lexer
   public static class ConLexer {
     public static boolean test = false;
     public static boolean dump = false;
+
+    // whether or not to memory-map the source file, instead of
+    // reading it through a buffered stream
+    public enum Mmap {ALWAYS, AUTO, NEVER}
+
+    public static Mmap mmap = Mmap.AUTO;
+    // in "AUTO" mode, map files at least this big (in bytes)
+    public static int mmapThreshold = 1 << 20;
+
+    // lex sources at least this big (in bytes) on all cores,
+    // or never if it is not positive
+    public static int parallelThreshold = 4 << 20;
+  }
+
+  // the parser
+  public static class ConParser {
+    // cut each declaration out of the file and paste it back with
+    // "parser.IncrementalParser", checking that the program is the
+    // one parsed from scratch after every edit
+    public static boolean testIncremental = false;
   }
 
   // the straight-line program interpreter
@@ -23,14 +72,28 @@ public class Control {
     public static boolean dumpAst = false;
     public static boolean testFac = false;
 
+    // keep the program as one flat arena ("ast.Flat") between
+    // phases, instead of as a tree of objects
+    public static boolean flatAst = false;
+
+    // the directory of the cache of elaborated programs ("ast.Cache"),
+    // or null for no cache
+    public static String cacheDir = null;
+
+    // skim the method bodies when parsing, and parse, elaborate and
+    // generate code only for the methods reachable from "main"
+    public static boolean lazyMethods = false;
+
     // elaborator
     public static boolean elabClassTable = false;
     public static boolean elabMethodTable = false;
+
+    // elaborate the methods of programs that have at least this many
+    // on all cores, or never if it is not positive
+    public static int parallelThreshold = 1024;
   }
 
   public static class ConCodeGen {
-    public static String fileName = null;
-
     public static String outputName = null;
 
     public static enum Kind_t {
@@ -39,4 +102,22 @@ public class Control {
 
     public static Kind_t codegen = Kind_t.C;
   }
+
+  // the compilation of several files in one run ("compiler.Batch")
+  public static class ConBatch {
+    // the number of files compiled at once
+    public static int jobs = Runtime.getRuntime().availableProcessors();
+    // the file listing the files to compile, if any
+    public static String manifest = null;
+  }
+
+  // the compile server ("compiler.Server") and its clients
+  public static class ConServer {
+    // the Unix socket to serve on, if any
+    public static String listen = null;
+    // the server to send the compilation to, if any
+    public static String connect = null;
+    // the number of connections served at once
+    public static int threads = 4;
+  }
 }
@@ -1,56 +1,112 @@
 package elaborator;
 
 import ast.Ast.Type;
+import util.CompileError;
+import util.Seq;
+import util.Symbol;
+import util.SymbolMap;
 
-import java.util.Hashtable;
+import java.io.PrintStream;
+import java.util.ArrayList;
 
 public class ClassBinding {
-  public String extendss; // null for non-existing extends
-  public Hashtable<String, Type.T> fields;
-  public Hashtable<String, MethodType> methods;
+  public Symbol extendss; // null for non-existing extends
+  // the members declared by this class, in the order of their
+  // declarations
+  public SymbolMap<Type.T> fields;
+  public SymbolMap<MethodType> methods;
+  // the interval of this class in the hierarchy, see
+  // "ClassTable.index": -1 until then
+  int pre, post;
 
-  public ClassBinding(String extendss) {
-    this.extendss = extendss;
-    this.fields = new Hashtable<String, Type.T>();
-    this.methods = new Hashtable<String, MethodType>();
-  }
+  // After "ClassTable.finish": all the fields and the methods of this
+  // class, the inherited ones included, by slot
+  public Seq<Member<Type.T>> allFields;
+  public Seq<Member<MethodType>> allMethods;
+  // and by name
+  private SymbolMap<Member<Type.T>> fieldTable;
+  private SymbolMap<Member<MethodType>> methodTable;
 
-  public ClassBinding(String extendss,
-                      Hashtable<String, Type.T> fields,
-                      Hashtable<String, MethodType> methods) {
+  public ClassBinding(Symbol extendss) {
     this.extendss = extendss;
-    this.fields = fields;
-    this.methods = methods;
+    this.fields = new SymbolMap<>();
+    this.methods = new SymbolMap<>();
+    this.pre = -1;
+    this.post = -1;
+    this.allFields = null;
+    this.allMethods = null;
   }
 
-  public void put(String xid, Type.T type) {
+  public void put(Symbol xid, Type.T type) {
     if (this.fields.get(xid) != null) {
-      System.out.println("duplicated class field: " + xid);
-      System.exit(1);
+      throw new CompileError("duplicated class field: " + xid);
     }
     this.fields.put(xid, type);
   }
 
-  public void put(String mid, MethodType mt) {
+  public void put(Symbol mid, MethodType mt) {
     if (this.methods.get(mid) != null) {
-      System.out.println("duplicated class method: " + mid);
-      System.exit(1);
+      throw new CompileError("duplicated class method: " + mid);
     }
     this.methods.put(mid, mt);
   }
 
-  @Override
-  public String toString() {
-    System.out.print("extends: ");
+  // Lay out the members of the class "c", bound here, after those of
+  // "parent", which is laid out already, or null: the fields of "c"
+  // come after the inherited ones, and its methods take the slots of
+  // the ones they override, or come after them.
+  void finish(Symbol c, ClassBinding parent) {
+    ArrayList<Member<Type.T>> fs = new ArrayList<>();
+    ArrayList<Member<MethodType>> ms = new ArrayList<>();
+    if (parent != null) {
+      fs.addAll(parent.allFields);
+      ms.addAll(parent.allMethods);
+    }
+    this.fields.forEach((id, type) ->
+        fs.add(new Member<>(c, id, type, fs.size())));
+    this.methods.forEach((id, type) -> {
+      Member<MethodType> old = parent == null ? null : parent.method(id);
+      if (old == null)
+        ms.add(new Member<>(c, id, type, ms.size()));
+      else
+        ms.set(old.slot, new Member<>(c, id, type, old.slot));
+    });
+    this.allFields = Seq.copyOf(fs);
+    this.allMethods = Seq.copyOf(ms);
+
+    this.fieldTable = new SymbolMap<>(fs.size());
+    for (Member<Type.T> f : fs)
+      this.fieldTable.put(f.id, f);
+    this.methodTable = new SymbolMap<>(ms.size());
+    for (Member<MethodType> m : ms)
+      this.methodTable.put(m.id, m);
+  }
+
+  // the field "id" of this class, inherited or not, or null
+  public Member<Type.T> field(Symbol id) {
+    return this.fieldTable.get(id);
+  }
+
+  // the method "id" of this class, inherited or not, or null
+  public Member<MethodType> method(Symbol id) {
+    return this.methodTable.get(id);
+  }
+
+  public void dump(PrintStream out) {
+    out.print("extends: ");
     if (this.extendss != null)
-      System.out.println(this.extendss);
+      out.println(this.extendss);
     else
-      System.out.println("<>");
-    System.out.println("\nfields:\n  ");
-    System.out.println(fields.toString());
-    System.out.println("\nmethods:\n  ");
-    System.out.println(methods.toString());
+      out.println("<>");
+    out.println("\nfields:\n  ");
+    out.println(fields.toString());
+    out.println("\nmethods:\n  ");
+    out.println(methods.toString());
+  }
 
+  @Override
+  public String toString() {
+    dump(System.out);
     return "";
   }
 
@@ -1,29 +1,67 @@
 package elaborator;
 
+import ast.Ast.Class;
+import ast.Ast.Class.ClassSingle;
+import ast.Ast.Dec;
+import ast.Ast.MainClass;
+import ast.Ast.Method;
+import ast.Ast.Method.MethodSingle;
+import ast.Ast.Program.ProgramSingle;
 import ast.Ast.Type;
+import util.CompileError;
+import util.Symbol;
+import util.SymbolMap;
 
-import java.util.Map;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 public class ClassTable {
   // map each class name (a string), to the class bindings.
-  private java.util.Hashtable<String, ClassBinding> table;
+  private SymbolMap<ClassBinding> table;
+  // the classes in the order of "index", superclasses first
+  private List<Symbol> order;
 
   public ClassTable() {
-    this.table = new java.util.Hashtable<String, ClassBinding>();
+    this.table = new SymbolMap<>();
+    this.order = new ArrayList<>();
+  }
+
+  // The class table of the program "p", finished: the classes, with
+  // the fields and the methods they declare. Duplicated classes and
+  // members are errors.
+  public static ClassTable of(ProgramSingle p) {
+    ClassTable t = new ClassTable();
+    t.put(((MainClass.MainClassSingle) p.mainClass).id, new ClassBinding(null));
+    for (Class.T c : p.classes) {
+      ClassSingle cc = (ClassSingle) c;
+      t.put(cc.id, new ClassBinding(cc.extendss));
+      for (Dec.T dec : cc.decs) {
+        Dec.DecSingle d = (Dec.DecSingle) dec;
+        t.put(cc.id, d.id, d.type);
+      }
+      for (Method.T method : cc.methods) {
+        MethodSingle m = (MethodSingle) method;
+        t.put(cc.id, m.id, new MethodType(m.retType, m.formals));
+      }
+    }
+    t.finish();
+    return t;
   }
 
   // Duplication is not allowed
-  public void put(String c, ClassBinding cb) {
+  public void put(Symbol c, ClassBinding cb) {
     if (this.table.get(c) != null) {
-      System.out.println("duplicated class: " + c);
-      System.exit(1);
+      throw new CompileError("duplicated class: " + c);
     }
     this.table.put(c, cb);
   }
 
   // put a field into this table
   // Duplication is not allowed
-  public void put(String c, String id, Type.T type) {
+  public void put(Symbol c, Symbol id, Type.T type) {
     ClassBinding cb = this.table.get(c);
     cb.put(id, type);
     return;
@@ -32,55 +70,148 @@ public class ClassTable {
   // put a method into this table
   // Duplication is not allowed.
   // Also note that MiniJava does NOT allow overloading.
-  public void put(String c, String id, MethodType type) {
+  public void put(Symbol c, Symbol id, MethodType type) {
     ClassBinding cb = this.table.get(c);
     cb.put(id, type);
     return;
   }
 
   // return null for non-existing class
-  public ClassBinding get(String className) {
+  public ClassBinding get(Symbol className) {
     return this.table.get(className);
   }
 
-  // get type of some field
+  // get type of some field, declared by the class or inherited
   // return null for non-existing field.
-  public Type.T get(String className, String xid) {
+  public Type.T get(Symbol className, Symbol xid) {
     ClassBinding cb = this.table.get(className);
-    Type.T type = cb.fields.get(xid);
-    while (type == null) { // search all parent classes until found or fail
-      if (cb.extendss == null)
-        return type;
-
-      cb = this.table.get(cb.extendss);
-      type = cb.fields.get(xid);
-    }
-    return type;
+    if (cb == null)
+      return null;
+    Member<Type.T> f = cb.field(xid);
+    return f == null ? null : f.type;
   }
 
-  // get type of some method
+  // get type of some method, declared by the class or inherited
   // return null for non-existing method
-  public MethodType getm(String className, String mid) {
+  public MethodType getm(Symbol className, Symbol mid) {
     ClassBinding cb = this.table.get(className);
-    MethodType type = cb.methods.get(mid);
-    while (type == null) { // search all parent classes until found or fail
-      if (cb.extendss == null)
-        return type;
+    if (cb == null)
+      return null;
+    Member<MethodType> m = cb.method(mid);
+    return m == null ? null : m.type;
+  }
+
+  // Once all the classes are in this table: check and number the
+  // hierarchy, and lay out the members of each class, the inherited
+  // ones included, so that looking one up never walks up the
+  // superclasses.
+  public void finish() {
+    index();
+    for (Symbol c : this.order) {
+      ClassBinding cb = this.table.get(c);
+      cb.finish(c, cb.extendss == null ? null : this.table.get(cb.extendss));
+    }
+  }
 
-      cb = this.table.get(cb.extendss);
-      type = cb.methods.get(mid);
+  // Number the classes in a depth-first walk of the inheritance
+  // forest, once all of them are in this table: each class gets the
+  // interval [pre, post] of the numbers of its subtree, so that
+  // "isSubtype" is two comparisons however deep the hierarchy. The
+  // roots are the classes that extend nothing. A class that extends
+  // an undefined class, or that is not reached from a root because
+  // its superclasses form a cycle, is an error.
+  private void index() {
+    SymbolMap<List<Symbol>> subclasses = new SymbolMap<>(table.size());
+    List<Symbol> roots = new ArrayList<>();
+    List<Symbol> classes = new ArrayList<>();
+    table.forEach((c, cb) -> {
+      classes.add(c);
+      Symbol parent = cb.extendss;
+      if (parent == null) {
+        roots.add(c);
+        return;
+      }
+      if (!table.containsKey(parent))
+        throw new CompileError("undefined class: " + parent
+            + ", extended by " + c);
+      List<Symbol> subs = subclasses.get(parent);
+      if (subs == null)
+        subclasses.put(parent, subs = new ArrayList<>());
+      subs.add(c);
+    });
+
+    // the walk is on an explicit stack, for hierarchies that are
+    // deeper than the Java stack
+    int n = 0;
+    this.order.clear();
+    ArrayDeque<Symbol> path = new ArrayDeque<>();
+    ArrayDeque<Iterator<Symbol>> next = new ArrayDeque<>();
+    for (Symbol root : roots) {
+      this.table.get(root).pre = n++;
+      this.order.add(root);
+      path.push(root);
+      next.push(subclasses(subclasses, root));
+      while (!path.isEmpty()) {
+        if (next.peek().hasNext()) {
+          Symbol c = next.peek().next();
+          this.table.get(c).pre = n++;
+          this.order.add(c);
+          path.push(c);
+          next.push(subclasses(subclasses, c));
+        } else {
+          this.table.get(path.pop()).post = n - 1;
+          next.pop();
+        }
+      }
+    }
+
+    if (n == classes.size())
+      return;
+    // a class is missed: going up from it ends in a cycle
+    for (Symbol missed : classes) {
+      if (this.table.get(missed).pre >= 0)
+        continue;
+      SymbolMap<Symbol> seen = new SymbolMap<>();
+      Symbol c = missed;
+      while (seen.put(c, c) == null)
+        c = this.table.get(c).extendss;
+      throw new CompileError("cyclic inheritance involving class: " + c);
     }
-    return type;
+  }
+
+  private static Iterator<Symbol> subclasses(SymbolMap<List<Symbol>> subs,
+                                             Symbol c) {
+    List<Symbol> l = subs.get(c);
+    return l == null ? List.<Symbol>of().iterator() : l.iterator();
+  }
+
+  // whether or not the class "a" is "b" or one of its subclasses,
+  // in constant time after "finish"
+  public boolean isSubclass(Symbol a, Symbol b) {
+    if (a == b)
+      return true;
+    ClassBinding ca = this.table.get(a), cb = this.table.get(b);
+    if (ca == null || cb == null)
+      return false;
+    return cb.pre <= ca.pre && ca.post <= cb.post;
+  }
+
+  // whether or not a value of type "a" can be used as a "b"
+  public boolean isSubtype(Type.T a, Type.T b) {
+    if (a == b)
+      return true;
+    return a instanceof Type.ClassType && b instanceof Type.ClassType
+        && isSubclass(((Type.ClassType) a).id, ((Type.ClassType) b).id);
   }
 
   private static final String ANSI_GREEN = "\u001B[32m";
   private static final String ANSI_RESET = "\u001B[0m";
 
-  public void dump() {
-    for (Map.Entry<String, ClassBinding> e : table.entrySet()) {
-      System.out.print(ANSI_GREEN + e.getKey() + "  " + ANSI_RESET);
-      System.out.print(e.getValue().toString());
-    }
+  public void dump(PrintStream out) {
+    table.forEach((c, cb) -> {
+      out.print(ANSI_GREEN + c + "  " + ANSI_RESET);
+      cb.dump(out);
+    });
   }
 
 
@@ -9,17 +9,52 @@ import ast.Ast.Method.MethodSingle;
 import ast.Ast.Program.ProgramSingle;
 import ast.Ast.Stm.*;
 import ast.Ast.Type.ClassType;
-import control.Control.ConAst;
-
-import java.util.LinkedList;
-
+import control.CompilationContext;
+import util.CompileError;
+import util.Seq;
+import util.Symbol;
+import util.Trampoline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// The nodes are visited on the explicit stack of a "Trampoline", so
+// that deeply nested programs do not overflow the Java stack: a visit
+// schedules its children with "walk", and the checks that need their
+// types with "then".
 public class ElaboratorVisitor implements ast.Visitor {
+  private final CompilationContext ctx;
+  private final Trampoline steps;
   public ClassTable classTable; // symbol table for class
   public MethodTable methodTable; // symbol table for each method
-  public String currentClass; // the class name being elaborated
+  public Symbol currentClass; // the class name being elaborated
   public Type.T type; // type of the expression being elaborated
-
-  public ElaboratorVisitor() {
+  // parses a skimmed method body, or null if all bodies are parsed
+  private final Consumer<MethodSingle> parseBody;
+  // the calls elaborated so far, when looking for reachable methods
+  private List<Call> calls;
+
+  public ElaboratorVisitor(CompilationContext ctx) {
+    this(ctx, null);
+  }
+
+  // Elaborate a program whose method bodies were skimmed, see
+  // "Parser.skim": only the methods that "main" can reach are parsed
+  // (by "parseBody") and elaborated, the others are dropped.
+  public ElaboratorVisitor(CompilationContext ctx,
+                           Consumer<MethodSingle> parseBody) {
+    this.ctx = ctx;
+    this.parseBody = parseBody;
+    this.calls = null;
+    this.steps = new Trampoline();
     this.classTable = new ClassTable();
     this.methodTable = new MethodTable();
     this.currentClass = null;
@@ -27,89 +62,109 @@ public class ElaboratorVisitor implements ast.Visitor {
   }
 
   private void error() {
-    System.out.println("type mismatch");
-    System.exit(1);
+    error("type mismatch");
+  }
+
+  private void error(String message) {
+    throw new CompileError(message);
+  }
+
+  private void walk(ast.Acceptable node) {
+    this.steps.then(() -> node.accept(this));
+  }
+
+  private void then(Runnable step) {
+    this.steps.then(step);
   }
 
   // /////////////////////////////////////////////////////
   // expressions
   @Override
   public void visit(Add e) {
-    e.left.accept(this);
-    Type.T leftty = this.type;
-    e.right.accept(this);
-    if (!this.type.toString().equals(leftty.toString()))
-      error();
-    this.type = new Type.Int();
+    walk(e.left);
+    then(() -> {
+      Type.T leftty = this.type;
+      walk(e.right);
+      then(() -> {
+        if (this.type != leftty)
+          error();
+        this.type = Type.INT;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(And e) {
-    e.left.accept(this);
-    Type.T leftty = this.type;
-    e.right.accept(this);
-    if (!this.type.toString().equals(leftty.toString()))
-      error();
-    this.type = new Type.Boolean();
+    walk(e.left);
+    then(() -> {
+      Type.T leftty = this.type;
+      walk(e.right);
+      then(() -> {
+        if (this.type != leftty)
+          error();
+        this.type = Type.BOOLEAN;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(ArraySelect e) {
-    e.array.accept(this);
-
-    if (!this.type.toString().equals((new Type.IntArray()).toString())) {
-      error();
-    }
-    this.type = new Type.Int();
+    walk(e.array);
+    then(() -> {
+      if (this.type != Type.INT_ARRAY) {
+        error();
+      }
+      this.type = Type.INT;
+    });
   }
 
   @Override
   public void visit(Call e) {
-    Type.T leftty;
-    ClassType ty = null;
-
-    e.exp.accept(this);
-    leftty = this.type;
-    if (leftty instanceof ClassType) {
-      ty = (ClassType) leftty;
+    walk(e.exp);
+    then(() -> {
+      Type.T leftty = this.type;
+      if (!(leftty instanceof ClassType))
+        error();
+      ClassType ty = (ClassType) leftty;
       e.type = ty.id;
-    } else
-      error();
-    MethodType mty = this.classTable.getm(ty.id, e.id);
-    LinkedList<Type.T> argsty = new LinkedList<Type.T>();
-    for (Exp.T a : e.args) {
-      a.accept(this);
-      argsty.addLast(this.type);
-    }
-    if (mty.argsType.size() != argsty.size())
-      error();
-
-    for (int i = 0; i < argsty.size(); i++) {
-
-      DecSingle dec = (DecSingle) mty.argsType.get(i);
-      String argTypeName = argsty.get(i).toString();
-
-      while (!dec.type.toString().equals(argTypeName)) {
-        ClassBinding cb = classTable.get(argTypeName);
-        if (cb == null || (argTypeName = cb.extendss) == null) {
-          error();
-        }
-
+      if (this.classTable.get(ty.id) == null)
+        error("undefined class: " + ty.id);
+      MethodType mty = this.classTable.getm(ty.id, e.id);
+      if (mty == null)
+        error("undefined method: " + ty.id + "." + e.id);
+      if (this.calls != null)
+        this.calls.add(e);
+      Seq.Builder<Type.T> argsBuilder = new Seq.Builder<>();
+      for (Exp.T a : e.args) {
+        walk(a);
+        then(() -> argsBuilder.add(this.type));
       }
+      then(() -> {
+        Seq<Type.T> argsty = argsBuilder.build();
+        if (mty.argsType.size() != argsty.size())
+          error();
 
+        for (int i = 0; i < argsty.size(); i++) {
 
-    }
-    this.type = mty.retType;
-    e.at = argsty;
-    e.rt = this.type;
+          DecSingle dec = (DecSingle) mty.argsType.get(i);
+          // the argument's class must be the parameter's class,
+          // or one of its subclasses
+          if (!this.classTable.isSubtype(argsty.get(i), dec.type))
+            error();
+        }
+        this.type = mty.retType;
+        e.at = argsty;
+        e.rt = this.type;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(False e) {
-    this.type = new Type.Boolean();
+    this.type = Type.BOOLEAN;
   }
 
   @Override
@@ -133,75 +188,87 @@ public class ElaboratorVisitor implements ast.Visitor {
 
   @Override
   public void visit(Length e) {
-    this.type = new Type.Int();
+    this.type = Type.INT;
   }
 
   @Override
   public void visit(Lt e) {
-    e.left.accept(this);
-    Type.T ty = this.type;
-    e.right.accept(this);
-    if (!this.type.toString().equals(ty.toString()))
-      error();
-    this.type = new Type.Boolean();
+    walk(e.left);
+    then(() -> {
+      Type.T ty = this.type;
+      walk(e.right);
+      then(() -> {
+        if (this.type != ty)
+          error();
+        this.type = Type.BOOLEAN;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(NewIntArray e) {
-    e.exp.accept(this);
-    this.type = new Type.IntArray();
+    walk(e.exp);
+    then(() -> this.type = Type.INT_ARRAY);
   }
 
   @Override
   public void visit(NewObject e) {
-    this.type = new ClassType(e.id);
+    this.type = ClassType.of(e.id);
     return;
   }
 
   @Override
   public void visit(Not e) {
-    e.exp.accept(this);
-    this.type = new Type.Boolean();
+    walk(e.exp);
+    then(() -> this.type = Type.BOOLEAN);
   }
 
   @Override
   public void visit(Num e) {
-    this.type = new Type.Int();
+    this.type = Type.INT;
     return;
   }
 
   @Override
   public void visit(Sub e) {
-    e.left.accept(this);
-    Type.T leftty = this.type;
-    e.right.accept(this);
-    if (!this.type.toString().equals(leftty.toString()))
-      error();
-    this.type = new Type.Int();
+    walk(e.left);
+    then(() -> {
+      Type.T leftty = this.type;
+      walk(e.right);
+      then(() -> {
+        if (this.type != leftty)
+          error();
+        this.type = Type.INT;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(This e) {
-    this.type = new ClassType(this.currentClass);
+    this.type = ClassType.of(this.currentClass);
     return;
   }
 
   @Override
   public void visit(Times e) {
-    e.left.accept(this);
-    Type.T leftty = this.type;
-    e.right.accept(this);
-    if (!this.type.toString().equals(leftty.toString()))
-      error();
-    this.type = new Type.Int();
+    walk(e.left);
+    then(() -> {
+      Type.T leftty = this.type;
+      walk(e.right);
+      then(() -> {
+        if (this.type != leftty)
+          error();
+        this.type = Type.INT;
+      });
+    });
     return;
   }
 
   @Override
   public void visit(True e) {
-    this.type = new Type.Boolean();
+    this.type = Type.BOOLEAN;
   }
 
   // statements
@@ -214,9 +281,12 @@ public class ElaboratorVisitor implements ast.Visitor {
       type = this.classTable.get(this.currentClass, s.id);
     if (type == null)
       error();
-    s.exp.accept(this);
     s.type = type;
-    this.type.toString().equals(type.toString());
+    walk(s.exp);
+    then(() -> {
+      if (!this.classTable.isSubtype(this.type, s.type))
+        error();
+    });
     return;
   }
 
@@ -232,50 +302,60 @@ public class ElaboratorVisitor implements ast.Visitor {
       error();
     }
 
-    s.index.accept(this);
-    if (!this.type.toString().equals((new Type.Int()).toString())) {
-      error();
-    }
+    walk(s.index);
+    then(() -> {
+      if (this.type != Type.INT) {
+        error();
+      }
+    });
 
-    s.exp.accept(this);
-    if (!this.type.toString().equals((new Type.Int()).toString())) {
-      error();
-    }
-    this.type = new Type.Int();
+    walk(s.exp);
+    then(() -> {
+      if (this.type != Type.INT) {
+        error();
+      }
+      this.type = Type.INT;
+    });
   }
 
   @Override
   public void visit(Block s) {
     for (Stm.T stm : s.stms) {
-      stm.accept(this);
+      walk(stm);
     }
   }
 
   @Override
   public void visit(If s) {
-    s.condition.accept(this);
-    if (!this.type.toString().equals("@boolean"))
-      error();
-    s.thenn.accept(this);
-    s.elsee.accept(this);
+    walk(s.condition);
+    then(() -> {
+      if (this.type != Type.BOOLEAN)
+        error();
+    });
+    walk(s.thenn);
+    walk(s.elsee);
     return;
   }
 
   @Override
   public void visit(Print s) {
-    s.exp.accept(this);
-    if (!this.type.toString().equals("@int"))
-      error();
+    walk(s.exp);
+    then(() -> {
+      if (this.type != Type.INT)
+        error();
+    });
     return;
   }
 
   @Override
   public void visit(While s) {
-    s.condition.accept(this);
-    if (!this.type.toString().equals((new Type.Boolean()).toString())) {
-      error();
-    }
-    s.body.accept(this);
+    walk(s.condition);
+    then(() -> {
+      if (this.type != Type.BOOLEAN) {
+        error();
+      }
+    });
+    walk(s.body);
   }
 
   // type
@@ -311,12 +391,12 @@ public class ElaboratorVisitor implements ast.Visitor {
     this.methodTable.clear();
     this.methodTable.put(m.formals, m.locals);
 
-    if (ConAst.elabMethodTable)
-      this.methodTable.dump();
+    if (ctx.elabMethodTable)
+      this.methodTable.dump(ctx.out);
 
     for (Stm.T s : m.stms)
-      s.accept(this);
-    m.retExp.accept(this);
+      walk(s);
+    walk(m.retExp);
     return;
   }
 
@@ -326,7 +406,7 @@ public class ElaboratorVisitor implements ast.Visitor {
     this.currentClass = c.id;
 
     for (Method.T m : c.methods) {
-      m.accept(this);
+      walk(m);
     }
     return;
   }
@@ -338,33 +418,10 @@ public class ElaboratorVisitor implements ast.Visitor {
     // "main" has an argument "arg" of type "String[]", but
     // one has no chance to use it. So it's safe to skip it...
 
-    c.stm.accept(this);
+    walk(c.stm);
     return;
   }
 
-  // ////////////////////////////////////////////////////////
-  // step 1: build class table
-  // class table for Main class
-  private void buildMainClass(MainClass.MainClassSingle main) {
-    this.classTable.put(main.id, new ClassBinding(null));
-  }
-
-  // class table for normal classes
-  private void buildClass(ClassSingle c) {
-    this.classTable.put(c.id, new ClassBinding(c.extendss));
-    for (Dec.T dec : c.decs) {
-      DecSingle d = (DecSingle) dec;
-      this.classTable.put(c.id, d.id, d.type);
-    }
-    for (Method.T method : c.methods) {
-      MethodSingle m = (MethodSingle) method;
-      this.classTable.put(c.id, m.id, new MethodType(m.retType, m.formals));
-    }
-  }
-
-  // step 1: end
-  // ///////////////////////////////////////////////////
-
   // program
   @Override
   public void visit(ProgramSingle p) {
@@ -372,23 +429,195 @@ public class ElaboratorVisitor implements ast.Visitor {
     // step 1: build a symbol table for class (the class table)
     // a class table is a mapping from class names to class bindings
     // classTable: className -> ClassBinding{extends, fields, methods}
-    buildMainClass((MainClass.MainClassSingle) p.mainClass);
-    for (Class.T c : p.classes) {
-      buildClass((ClassSingle) c);
-    }
+    // It is finished at once: each class sees its inherited members,
+    // and the hierarchy is numbered for the subtype checks.
+    this.classTable = ClassTable.of(p);
 
     // we can double check that the class table is OK!
-    if (control.Control.ConAst.elabClassTable) {
-      this.classTable.dump();
+    if (ctx.elabClassTable) {
+      this.classTable.dump(ctx.out);
+    }
+
+    if (this.parseBody != null) {
+      elaborateReachable(p);
+      return;
     }
 
     // ////////////////////////////////////////////////
     // step 2: elaborate each class in turn, under the class table
     // built above.
-    p.mainClass.accept(this);
+    walk(p.mainClass);
+    int n = 0;
+    for (Class.T c : p.classes)
+      n += ((ClassSingle) c).methods.size();
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    // dumped method tables must come out in order
+    if (ctx.elabParallelThreshold > 0 && n >= ctx.elabParallelThreshold
+        && pool.getParallelism() > 1 && !ctx.elabMethodTable) {
+      Symbol[] classes = new Symbol[n];
+      MethodSingle[] methods = new MethodSingle[n];
+      int i = 0;
+      for (Class.T c : p.classes) {
+        for (Method.T m : ((ClassSingle) c).methods) {
+          classes[i] = ((ClassSingle) c).id;
+          methods[i++] = (MethodSingle) m;
+        }
+      }
+      elaborateParallel(pool, classes, methods);
+      return;
+    }
     for (Class.T c : p.classes) {
-      c.accept(this);
+      walk(c);
     }
 
   }
+
+  // Elaborate each method "methods[i]", of the class "classes[i]", on
+  // "pool". The methods do not depend on each other: a task has a
+  // visitor of its own, with its own method table, trampoline, class
+  // and type, and shares only the class table, which is finished and
+  // only read from now on. Like the walk in one thread, elaboration
+  // fails with the first error in the order of the program, whichever
+  // task finds it first.
+  private void elaborateParallel(ForkJoinPool pool, Symbol[] classes,
+                                 MethodSingle[] methods) {
+    RuntimeException[] errors = new RuntimeException[methods.length];
+    int grain = Math.max(16, methods.length / (8 * pool.getParallelism()));
+    pool.invoke(new Methods(classes, methods, errors, 0, methods.length,
+        grain));
+    for (RuntimeException e : errors)
+      if (e != null)
+        throw e;
+  }
+
+  // the methods "from" to "to", in halves down to "grain" methods
+  private class Methods extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Symbol[] classes;
+    private final MethodSingle[] methods;
+    private final RuntimeException[] errors;
+    private final int from, to, grain;
+
+    Methods(Symbol[] classes, MethodSingle[] methods,
+            RuntimeException[] errors, int from, int to, int grain) {
+      this.classes = classes;
+      this.methods = methods;
+      this.errors = errors;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > grain) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Methods(classes, methods, errors, from, mid, grain),
+            new Methods(classes, methods, errors, mid, to, grain));
+        return;
+      }
+      // The class table is shared, not copied: nothing stops a task
+      // from changing it, but the elaborator only reads it once it is
+      // finished ("ClassTable.of"), and "SymbolMap" lookups write
+      // nothing, so the tasks can read it at the same time.
+      ElaboratorVisitor v = new ElaboratorVisitor(ctx);
+      v.classTable = classTable;
+      for (int i = from; i < to; i++) {
+        try {
+          v.currentClass = classes[i];
+          v.walk(methods[i]);
+        } catch (RuntimeException e) {
+          errors[i] = e;
+        }
+      }
+    }
+  }
+
+  // ////////////////////////////////////////////////
+  // step 2, with "-lazy": elaborate "main", then every method that a
+  // call elaborated so far may dispatch to, by class hierarchy
+  // analysis: the method the static class of the call inherits, and
+  // the ones that override it in the subclasses of that class. Each
+  // method is parsed just before it is elaborated, and the methods
+  // never reached are removed from their classes, so that code
+  // generation never sees them.
+  //
+  // "walk" elaborates a whole method at once here, as the visit of
+  // the program is not itself on the trampoline.
+  private void elaborateReachable(ProgramSingle p) {
+    Map<Symbol, ClassSingle> classes = new HashMap<>();
+    Map<Symbol, List<Symbol>> subclasses = new HashMap<>();
+    for (Class.T c : p.classes) {
+      ClassSingle cc = (ClassSingle) c;
+      classes.put(cc.id, cc);
+      if (cc.extendss != null)
+        subclasses.computeIfAbsent(cc.extendss, k -> new ArrayList<>())
+            .add(cc.id);
+    }
+
+    Set<MethodSingle> reached = new HashSet<>();
+    this.calls = new ArrayList<>();
+    walk(p.mainClass);
+    // the methods called so far, by static class
+    Map<Symbol, Set<Symbol>> done = new HashMap<>();
+    for (int i = 0; i < this.calls.size(); i++) {
+      Call call = this.calls.get(i);
+      if (!done.computeIfAbsent(call.type, k -> new HashSet<>()).add(call.id))
+        continue;
+      // the method inherited by the static class of the call
+      for (Symbol c = call.type; c != null; ) {
+        ClassSingle cc = classes.get(c);
+        if (cc == null)
+          break;
+        MethodSingle m = method(cc, call.id);
+        if (m != null) {
+          reach(cc, m, reached);
+          break;
+        }
+        c = cc.extendss;
+      }
+      // and the methods overriding it
+      ArrayDeque<Symbol> todo = new ArrayDeque<>(
+          subclasses.getOrDefault(call.type, List.of()));
+      while (!todo.isEmpty()) {
+        Symbol c = todo.pop();
+        ClassSingle cc = classes.get(c);
+        MethodSingle m = method(cc, call.id);
+        if (m != null)
+          reach(cc, m, reached);
+        todo.addAll(subclasses.getOrDefault(c, List.of()));
+      }
+    }
+    this.calls = null;
+
+    for (Class.T c : p.classes) {
+      ClassSingle cc = (ClassSingle) c;
+      Seq.Builder<Method.T> methods = new Seq.Builder<>();
+      for (Method.T m : cc.methods)
+        if (reached.contains(m))
+          methods.add(m);
+      cc.methods = methods.build();
+    }
+    // the class table of what is left, for code generation
+    this.classTable = ClassTable.of(p);
+  }
+
+  // the method "id" declared by "c", or null
+  private static MethodSingle method(ClassSingle c, Symbol id) {
+    for (Method.T method : c.methods) {
+      MethodSingle m = (MethodSingle) method;
+      if (m.id == id)
+        return m;
+    }
+    return null;
+  }
+
+  private void reach(ClassSingle c, MethodSingle m, Set<MethodSingle> reached) {
+    if (!reached.add(m))
+      return;
+    this.parseBody.accept(m);
+    this.currentClass = c.id;
+    walk(m);
+  }
 }
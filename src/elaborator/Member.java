@@ -0,0 +1,29 @@
+package elaborator;
+
+import util.Symbol;
+
+// A field or a method of a class, as the class table sees it: "type"
+// is the "Type.T" of a field, or the "MethodType" of a method.
+//
+// A member is shared by the class that declares it and by all the
+// classes that inherit it, in the same slot: the index of a field in
+// the fields of the object, or of a method in the virtual table. A
+// method that overrides another one takes its slot.
+public class Member<X> {
+  public final Symbol classs; // the class that declares it
+  public final Symbol id;
+  public final X type;
+  public final int slot;
+
+  public Member(Symbol classs, Symbol id, X type, int slot) {
+    this.classs = classs;
+    this.id = id;
+    this.type = type;
+    this.slot = slot;
+  }
+
+  @Override
+  public String toString() {
+    return this.classs + "." + this.id + ": " + this.type;
+  }
+}
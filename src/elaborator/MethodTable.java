@@ -2,25 +2,28 @@ package elaborator;
 
 import ast.Ast.Dec;
 import ast.Ast.Type;
+import util.CompileError;
+import util.Seq;
+import util.Symbol;
+import util.SymbolMap;
 
-import java.util.LinkedList;
-import java.util.Map;
+import java.io.PrintStream;
 
 public class MethodTable {
-  private java.util.Hashtable<String, Type.T> table;
+  // cleared for each method, so its arrays are allocated once
+  private SymbolMap<Type.T> table;
 
   public MethodTable() {
-    this.table = new java.util.Hashtable<String, Type.T>();
+    this.table = new SymbolMap<>();
   }
 
   // Duplication is not allowed
-  public void put(LinkedList<Dec.T> formals,
-                  LinkedList<Dec.T> locals) {
+  public void put(Seq<Dec.T> formals,
+                  Seq<Dec.T> locals) {
     for (Dec.T dec : formals) {
       Dec.DecSingle decc = (Dec.DecSingle) dec;
       if (this.table.get(decc.id) != null) {
-        System.out.println("duplicated parameter: " + decc.id);
-        System.exit(1);
+        throw new CompileError("duplicated parameter: " + decc.id);
       }
       this.table.put(decc.id, decc.type);
     }
@@ -28,8 +31,7 @@ public class MethodTable {
     for (Dec.T dec : locals) {
       Dec.DecSingle decc = (Dec.DecSingle) dec;
       if (this.table.get(decc.id) != null) {
-        System.out.println("duplicated variable: " + decc.id);
-        System.exit(1);
+        throw new CompileError("duplicated variable: " + decc.id);
       }
       this.table.put(decc.id, decc.type);
     }
@@ -37,7 +39,7 @@ public class MethodTable {
   }
 
   // return null for non-existing keys
-  public Type.T get(String id) {
+  public Type.T get(Symbol id) {
     return this.table.get(id);
   }
 
@@ -45,10 +47,9 @@ public class MethodTable {
     this.table.clear();
   }
 
-  public void dump() {
-    for (Map.Entry<String, Type.T> e : table.entrySet()) {
-      System.out.println(e.getKey() + " -> " + e.getValue().toString());
-    }
+  public void dump(PrintStream out) {
+    table.forEach((id, type) ->
+        out.println(id + " -> " + type.toString()));
   }
 
   @Override
@@ -2,14 +2,13 @@ package elaborator;
 
 import ast.Ast.Dec;
 import ast.Ast.Type;
-
-import java.util.LinkedList;
+import util.Seq;
 
 public class MethodType {
   public Type.T retType;
-  public LinkedList<Dec.T> argsType;
+  public Seq<Dec.T> argsType;
 
-  public MethodType(Type.T retType, LinkedList<Dec.T> decs) {
+  public MethodType(Type.T retType, Seq<Dec.T> decs) {
     this.retType = retType;
     this.argsType = decs;
   }
@@ -0,0 +1,238 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+// The transition table of the lexer, generated from "TokenSpec" when
+// this class is loaded:
+//   1. every pattern becomes an NFA (Thompson's construction);
+//   2. the subset construction turns their union into a DFA, in which
+//      a state accepts the kind of the first rule it contains;
+//   3. the states that no input can tell apart are merged (Moore's
+//      partition refinement), which gives the minimal DFA;
+//   4. the states are numbered with the accepting ones last, and the
+//      table holds, for each state and byte, the offset of the row of
+//      the next state.
+// Scanning a token is then one load per byte, plus compares to know
+// whether the token may end, or must end, there.
+final class Dfa {
+  // the rows of the states in "next": "DEAD" is the state from which
+  // no token can be completed, the states from row "ACCEPTING" on end
+  // a token, and those from row "FINAL" on cannot go any further
+  static final int DEAD = 0;
+  static final int START = 1 << 8;
+  static final int ACCEPTING;
+  static final int FINAL;
+
+  static final int[] next; // "next[row | byte]"
+  static final Kind[] accept; // "accept[row >> 8]", the kind of token
+
+  private Dfa() {
+  }
+
+  // ///////////////////////////////////////////////////////
+  // the NFA
+
+  private static final class NState {
+    final int id;
+    BitSet chars; // the bytes on the edge to "to", or null
+    NState to;
+    final ArrayList<NState> eps = new ArrayList<>();
+    int rule = -1; // the rule it accepts, if any
+
+    NState(ArrayList<NState> all) {
+      this.id = all.size();
+      all.add(this);
+    }
+  }
+
+  // Add the NFA of "pattern" after "start", and return its last state.
+  private static NState pattern(String pattern, NState start,
+                                ArrayList<NState> all) {
+    NState cur = start;
+    int i = 0;
+
+    while (i < pattern.length()) {
+      BitSet chars = new BitSet(256);
+      char c = pattern.charAt(i++);
+      if (c == '[') {
+        while ((c = pattern.charAt(i++)) != ']') {
+          if (c == '\\')
+            c = pattern.charAt(i++);
+          char hi = c;
+          if (i + 1 < pattern.length() && pattern.charAt(i) == '-'
+              && pattern.charAt(i + 1) != ']') {
+            hi = pattern.charAt(i + 1);
+            i += 2;
+          }
+          chars.set(c, hi + 1);
+        }
+      } else {
+        if (c == '\\')
+          c = pattern.charAt(i++);
+        chars.set(c);
+      }
+      char rep = i < pattern.length() ? pattern.charAt(i) : 0;
+      if (rep == '*' || rep == '+')
+        i++;
+
+      NState a = new NState(all), b = new NState(all);
+      cur.eps.add(a);
+      a.chars = chars;
+      a.to = b;
+      if (rep == '*' || rep == '+') {
+        NState after = new NState(all);
+        b.eps.add(a);
+        b.eps.add(after);
+        if (rep == '*')
+          a.eps.add(after);
+        cur = after;
+      } else
+        cur = b;
+    }
+    return cur;
+  }
+
+  private static BitSet closure(BitSet set, ArrayList<NState> all) {
+    BitSet result = (BitSet) set.clone();
+    ArrayList<NState> work = new ArrayList<>();
+    set.stream().forEach(i -> work.add(all.get(i)));
+
+    while (!work.isEmpty()) {
+      NState s = work.remove(work.size() - 1);
+      for (NState t : s.eps) {
+        if (!result.get(t.id)) {
+          result.set(t.id);
+          work.add(t);
+        }
+      }
+    }
+    return result;
+  }
+
+  // ///////////////////////////////////////////////////////
+  // the generator
+
+  static {
+    TokenSpec.Rule[] rules = TokenSpec.RULES;
+
+    // 1. the NFA
+    ArrayList<NState> all = new ArrayList<>();
+    NState nstart = new NState(all);
+    for (int r = 0; r < rules.length; r++)
+      pattern(rules[r].pattern, nstart, all).rule = r;
+
+    // 2. the DFA, with the empty set as state 0 and the start as state 1
+    ArrayList<BitSet> sets = new ArrayList<>();
+    HashMap<BitSet, Integer> index = new HashMap<>();
+    ArrayList<int[]> trans = new ArrayList<>();
+    BitSet empty = new BitSet();
+    BitSet first = new BitSet();
+    first.set(nstart.id);
+    for (BitSet set : new BitSet[]{empty, closure(first, all)}) {
+      index.put(set, sets.size());
+      sets.add(set);
+    }
+    for (int d = 0; d < sets.size(); d++) {
+      int[] row = new int[256];
+      for (int c = 0; c < 256; c++) {
+        BitSet to = new BitSet();
+        for (int i = sets.get(d).nextSetBit(0); i >= 0;
+             i = sets.get(d).nextSetBit(i + 1)) {
+          NState s = all.get(i);
+          if (s.chars != null && s.chars.get(c))
+            to.set(s.to.id);
+        }
+        to = closure(to, all);
+        Integer t = index.get(to);
+        if (t == null) {
+          t = sets.size();
+          index.put(to, t);
+          sets.add(to);
+        }
+        row[c] = t;
+      }
+      trans.add(row);
+    }
+    int n = sets.size();
+    int[] rule = new int[n];
+    for (int d = 0; d < n; d++) {
+      rule[d] = -1;
+      for (int i = sets.get(d).nextSetBit(0); i >= 0;
+           i = sets.get(d).nextSetBit(i + 1)) {
+        int r = all.get(i).rule;
+        if (r >= 0 && (rule[d] < 0 || r < rule[d]))
+          rule[d] = r;
+      }
+    }
+
+    // 3. minimize: split blocks until all the states of a block
+    // accept the same rule and go to the same blocks on every byte
+    int[] block = new int[n];
+    HashMap<String, Integer> ids = new HashMap<>();
+    for (int d = 0; d < n; d++)
+      block[d] = ids.computeIfAbsent("" + rule[d], k -> ids.size());
+    int blocks = ids.size();
+    while (true) {
+      HashMap<String, Integer> refined = new HashMap<>();
+      int[] newBlock = new int[n];
+      for (int d = 0; d < n; d++) {
+        StringBuilder key = new StringBuilder().append(block[d]);
+        for (int c = 0; c < 256; c++)
+          key.append(',').append(block[trans.get(d)[c]]);
+        newBlock[d] = refined.computeIfAbsent(key.toString(),
+            k -> refined.size());
+      }
+      block = newBlock;
+      if (refined.size() == blocks)
+        break;
+      blocks = refined.size();
+    }
+
+    // number the blocks: DEAD, START, the states that do not accept,
+    // those that accept, and then those that accept and lead nowhere
+    int[] order = new int[n];
+    for (int d = 0; d < n; d++) {
+      order[d] = 0;
+      if (rule[d] >= 0) {
+        order[d] = 2;
+        for (int c = 0; c < 256; c++) {
+          if (block[trans.get(d)[c]] != block[0])
+            order[d] = 1;
+        }
+      }
+    }
+    int[] number = new int[blocks];
+    int[] firsts = new int[3];
+    Arrays.fill(number, -1);
+    number[block[0]] = 0;
+    number[block[1]] = 1;
+    int states = 2;
+    for (int pass = 0; pass < 3; pass++) {
+      firsts[pass] = states << 8;
+      for (int d = 0; d < n; d++) {
+        if (number[block[d]] < 0 && order[d] == pass)
+          number[block[d]] = states++;
+      }
+    }
+
+    // 4. the table
+    int[] table = new int[states << 8];
+    Kind[] kinds = new Kind[states];
+    for (int d = 0; d < n; d++) {
+      int s = number[block[d]];
+      for (int c = 0; c < 256; c++)
+        table[s << 8 | c] = number[block[trans.get(d)[c]]] << 8;
+      kinds[s] = rule[d] < 0 ? null : rules[rule[d]].kind;
+    }
+
+    ACCEPTING = firsts[1];
+    FINAL = firsts[2];
+    next = table;
+    accept = kinds;
+  }
+}
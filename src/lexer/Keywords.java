@@ -0,0 +1,106 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+import java.nio.ByteBuffer;
+
+// Keyword recognition, shared by all lexers.
+//
+// A keyword is identified directly from the scanned bytes: the length
+// and the first character pick at most a couple of candidates, which are
+// then compared byte by byte. Nothing is allocated, so an identifier
+// only becomes a String (or a Symbol) once it is known not to be a
+// keyword.
+final class Keywords {
+  private Keywords() {
+  }
+
+  // return the keyword kind of "buf[start, end)",
+  // or null if it is an ordinary identifier.
+  static Kind lookup(ByteBuffer buf, int start, int end) {
+    int c = buf.get(start);
+    switch (end - start) {
+      case 2:
+        if (c == 'i' && is(buf, start, "if"))
+          return Kind.TOKEN_IF;
+        return null;
+      case 3:
+        switch (c) {
+          case 'i':
+            return is(buf, start, "int") ? Kind.TOKEN_INT : null;
+          case 'n':
+            return is(buf, start, "new") ? Kind.TOKEN_NEW : null;
+          case 'o':
+            return is(buf, start, "out") ? Kind.TOKEN_OUT : null;
+          default:
+            return null;
+        }
+      case 4:
+        switch (c) {
+          case 'e':
+            return is(buf, start, "else") ? Kind.TOKEN_ELSE : null;
+          case 'm':
+            return is(buf, start, "main") ? Kind.TOKEN_MAIN : null;
+          case 't':
+            if (is(buf, start, "this"))
+              return Kind.TOKEN_THIS;
+            return is(buf, start, "true") ? Kind.TOKEN_TRUE : null;
+          case 'v':
+            return is(buf, start, "void") ? Kind.TOKEN_VOID : null;
+          default:
+            return null;
+        }
+      case 5:
+        switch (c) {
+          case 'c':
+            return is(buf, start, "class") ? Kind.TOKEN_CLASS : null;
+          case 'f':
+            return is(buf, start, "false") ? Kind.TOKEN_FALSE : null;
+          case 'w':
+            return is(buf, start, "while") ? Kind.TOKEN_WHILE : null;
+          default:
+            return null;
+        }
+      case 6:
+        switch (c) {
+          case 'l':
+            return is(buf, start, "length") ? Kind.TOKEN_LENGTH : null;
+          case 'p':
+            return is(buf, start, "public") ? Kind.TOKEN_PUBLIC : null;
+          case 'r':
+            return is(buf, start, "return") ? Kind.TOKEN_RETURN : null;
+          case 's':
+            return is(buf, start, "static") ? Kind.TOKEN_STATIC : null;
+          case 'S':
+            if (is(buf, start, "String"))
+              return Kind.TOKEN_STRING;
+            return is(buf, start, "System") ? Kind.TOKEN_SYSTEM : null;
+          default:
+            return null;
+        }
+      case 7:
+        switch (c) {
+          case 'b':
+            return is(buf, start, "boolean") ? Kind.TOKEN_BOOLEAN : null;
+          case 'e':
+            return is(buf, start, "extends") ? Kind.TOKEN_EXTENDS : null;
+          case 'p':
+            return is(buf, start, "println") ? Kind.TOKEN_PRINTLN : null;
+          default:
+            return null;
+        }
+      default:
+        return null;
+    }
+  }
+
+  // whether or not "buf" holds "word" at "start". The length and
+  // the first character have already been checked by the caller.
+  private static boolean is(ByteBuffer buf, int start, String word) {
+    for (int i = 1; i < word.length(); i++) {
+      if (buf.get(start + i) != word.charAt(i))
+        return false;
+    }
+    return true;
+  }
+}
@@ -1,218 +1,236 @@
 package lexer;
 
+import control.CompilationContext;
 import lexer.Token.Kind;
+import util.CompileError;
+import util.Symbol;
 
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
-
-import static control.Control.ConLexer.dump;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class Lexer {
-  String fname; // the input file name to be compiled
-  InputStream fstream; // input stream for the above file
-  Map<String, Kind> keywords;
+  CompilationContext ctx; // the compilation, with the file name
+  ByteBuffer buf; // the whole input file, on the heap or mapped
+  ByteBuffer words; // the same bytes, read as big-endian longs
+  int pos; // index of the next unread byte in "buf"
+  int end; // one past the last valid byte in "buf"
+  int tokenStart; // where the last scanned token starts in "buf"
   int lineNumber;
-  Token peekToken;
-
-  public Lexer(String fname, InputStream fstream) {
-    this.fname = fname;
-    this.fstream = fstream;
-    this.lineNumber = 1;
-    this.peekToken = null;
-
-    keywords = new HashMap<>();
-    keywords.put("boolean", Kind.TOKEN_BOOLEAN);
-    keywords.put("class", Kind.TOKEN_CLASS);
-    keywords.put("else", Kind.TOKEN_ELSE);
-    keywords.put("extends", Kind.TOKEN_EXTENDS);
-    keywords.put("false", Kind.TOKEN_FALSE);
-    keywords.put("if", Kind.TOKEN_IF);
-    keywords.put("int", Kind.TOKEN_INT);
-    keywords.put("length", Kind.TOKEN_LENGTH);
-    keywords.put("main", Kind.TOKEN_MAIN);
-    keywords.put("new", Kind.TOKEN_NEW);
-    keywords.put("out", Kind.TOKEN_OUT);
-    keywords.put("println", Kind.TOKEN_PRINTLN);
-    keywords.put("public", Kind.TOKEN_PUBLIC);
-    keywords.put("return", Kind.TOKEN_RETURN);
-    keywords.put("static", Kind.TOKEN_STATIC);
-    keywords.put("String", Kind.TOKEN_STRING);
-    keywords.put("System", Kind.TOKEN_SYSTEM);
-    keywords.put("this", Kind.TOKEN_THIS);
-    keywords.put("true", Kind.TOKEN_TRUE);
-    keywords.put("void", Kind.TOKEN_VOID);
-    keywords.put("while", Kind.TOKEN_WHILE);
-  }
-
-  private static boolean isLetter(int c) {
-    return (c >= 'a' && c <= 'z') ||
-        (c >= 'A' && c <= 'Z');
-  }
-
-  private static boolean isDigit(int c) {
-    return c >= '0' && c <= '9';
-  }
-
-  private Token identifier(int c) throws Exception {
-    StringBuilder sb = new StringBuilder();
-    sb.append((char) c);
-
-    fstream.mark(1);
-    c = fstream.read();
-
-    while (c == '_' || isLetter(c) || isDigit(c)) {
-      sb.append((char) c);
-      fstream.mark(1);
-      c = fstream.read();
-    }
-    fstream.reset();
 
-    String lexeme = sb.toString();
-    Kind kind;
-    if ((kind = keywords.get(lexeme)) != null) {
-      return new Token(kind, lineNumber);
-    } else {
-      return new Token(Kind.TOKEN_ID, lineNumber, lexeme);
-    }
+  public Lexer(CompilationContext ctx, InputStream fstream) {
+    this(ctx, readAll(fstream));
   }
 
-  private Token integerLiteral(int c) throws Exception {
-    StringBuilder sb = new StringBuilder();
-    sb.append((char) c);
+  // Scan "buf" directly, from its position to its limit. This is
+  // how a memory-mapped source file gets to the lexer without being
+  // copied onto the heap.
+  public Lexer(CompilationContext ctx, ByteBuffer buf) {
+    this(ctx, buf, 1);
+  }
 
-    fstream.mark(1);
-    c = fstream.read();
+  // Scan a part of a file, whose first byte is on line "lineNumber".
+  // Token positions still count from the start of "buf".
+  public Lexer(CompilationContext ctx, ByteBuffer buf, int lineNumber) {
+    this.ctx = ctx;
+    this.buf = buf;
+    this.words = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    this.pos = buf.position();
+    this.end = buf.limit();
+    this.tokenStart = this.pos;
+    this.lineNumber = lineNumber;
+  }
 
-    while (isDigit(c)) {
-      sb.append((char) c);
-      fstream.mark(1);
-      c = fstream.read();
+  // Pull the whole source into memory, so that the scanner
+  // below can work on a buffer with a cursor, instead of
+  // paying a (synchronized) virtual call for every byte and a
+  // mark/reset pair for every byte of lookahead.
+  public static ByteBuffer readAll(InputStream fstream) {
+    try {
+      return ByteBuffer.wrap(fstream.readAllBytes());
+    } catch (java.io.IOException e) {
+      throw new CompileError("cannot read the source: " + e, e);
     }
-    fstream.reset();
+  }
 
-    String lexeme = sb.toString();
-    return new Token(Kind.TOKEN_NUM, lineNumber, lexeme);
+  // read the next byte, or -1 at the end of the input
+  private int read() {
+    return pos < end ? buf.get(pos++) & 0xff : -1;
   }
 
-  // When called, return the next token (refer to the code "Token.java")
-  // from the input stream.
-  // Return TOKEN_EOF when reaching the end of the input stream.
-  private Token nextTokenInternal() throws Exception {
-    int c = this.fstream.read(), c2;
+  // the byte at "i", or -1 if "i" is out of the input
+  private int at(int i) {
+    return i < end ? buf.get(i) & 0xff : -1;
+  }
+
+  // Blanks and comments are skipped a word at a time: "words" reads
+  // the input 8 bytes at once, and the SWAR ("SIMD within a register")
+  // helpers below test all of them in a few instructions.
+  private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+  private static final long HIGHS = 0x8080808080808080L;
+  private static final long SPACES = 0x2020202020202020L;
+  private static final long TABS = 0x0909090909090909L;
+  private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+
+  // the high bit of each byte of "x" that is zero
+  private static long zeros(long x) {
+    return ~(((x & LOWS) + LOWS) | x) & HIGHS;
+  }
+
+  // Skip the blanks from "pos" on, counting the line breaks.
+  private void skipBlanks() {
+    while (pos + 8 <= end) {
+      long w = words.getLong(pos);
+      long newlines = zeros(w ^ NEWLINES);
+      long others = ~(newlines | zeros(w ^ SPACES) | zeros(w ^ TABS)) & HIGHS;
+      if (others == 0) {
+        lineNumber += Long.bitCount(newlines);
+        pos += 8;
+        continue;
+      }
+      // the first byte is the most significant one
+      int n = Long.numberOfLeadingZeros(others) >>> 3;
+      if (n > 0)
+        lineNumber += Long.bitCount(newlines & (-1L << (64 - 8 * n)));
+      pos += n;
+      return;
+    }
+    for (int c; pos < end; pos++) {
+      c = buf.get(pos);
+      if (c == '\n')
+        ++lineNumber;
+      else if (c != ' ' && c != '\t')
+        return;
+    }
+  }
+
+  // Skip the rest of a line comment, including its line break.
+  private void skipComment() {
+    while (pos + 8 <= end) {
+      long newlines = zeros(words.getLong(pos) ^ NEWLINES);
+      if (newlines != 0) {
+        pos += (Long.numberOfLeadingZeros(newlines) >>> 3) + 1;
+        ++lineNumber;
+        return;
+      }
+      pos += 8;
+    }
+    while (pos < end) {
+      if (buf.get(pos++) == '\n') {
+        ++lineNumber;
+        break;
+      }
+    }
+  }
 
-    if (-1 == c)
-      // The value for "lineNum" is now "null",
-      // you should modify this to an appropriate
-      // line number for the "EOF" token.
-      return new Token(Kind.TOKEN_EOF, null);
+  // Scan the next token, leaving its text in "buf[tokenStart, pos)"
+  // and its line in "lineNumber". Return its kind, TOKEN_EOF when
+  // reaching the end of the input, or null for a character that
+  // does not start any token.
+  private Kind scan() {
+    int c = read();
 
     // skip all kinds of "blanks" or comments
-    while (' ' == c || '\t' == c || '\n' == c || '/' == c) {
+    while (' ' == c || '\t' == c || '\n' == c
+        || ('/' == c && at(pos) == '/')) {
       if (c == '\n') {
         ++this.lineNumber;
       } else if (c == '/') {
-        c = fstream.read();
-        if (c == '/') {
-          c = fstream.read();
-          while (c != -1) {
-            if (c == '\n') {
-              ++lineNumber;
-              break;
-            }
-            c = fstream.read();
-          }
-
-        }
+        pos++;
+        skipComment();
       }
-      c = this.fstream.read();
+      skipBlanks();
+      c = read();
     }
 
+    if (-1 == c) {
+      tokenStart = pos;
+      return Kind.TOKEN_EOF;
+    }
+    tokenStart = pos - 1;
 
-    if (-1 == c)
-      return new Token(Kind.TOKEN_EOF, lineNumber);
-
-
-    switch (c) {
-      case '+':
-        return new Token(Kind.TOKEN_ADD, lineNumber);
-      case '&':
-        c2 = fstream.read();
-        if (c2 == '&') {
-          return new Token(Kind.TOKEN_AND, lineNumber);
-        }
-      case '=':
-        return new Token(Kind.TOKEN_ASSIGN, lineNumber);
-      case ',':
-        return new Token(Kind.TOKEN_COMMER, lineNumber);
-      case '.':
-        return new Token(Kind.TOKEN_DOT, lineNumber);
-      case '{':
-        return new Token(Kind.TOKEN_LBRACE, lineNumber);
-      case '[':
-        return new Token(Kind.TOKEN_LBRACK, lineNumber);
-      case '(':
-        return new Token(Kind.TOKEN_LPAREN, lineNumber);
-      case '<':
-        return new Token(Kind.TOKEN_LT, lineNumber);
-      case '!':
-        return new Token(Kind.TOKEN_NOT, lineNumber);
-      case '}':
-        return new Token(Kind.TOKEN_RBRACE, lineNumber);
-      case ']':
-        return new Token(Kind.TOKEN_RBRACK, lineNumber);
-      case ')':
-        return new Token(Kind.TOKEN_RPAREN, lineNumber);
-      case ';':
-        return new Token(Kind.TOKEN_SEMI, lineNumber);
-      case '-':
-        return new Token(Kind.TOKEN_SUB, lineNumber);
-      case '*':
-        return new Token(Kind.TOKEN_TIMES, lineNumber);
-
-
-      default:
-        // Lab 1, exercise 2: supply missing code to
-        // lex other kinds of tokens.
-        // Hint: think carefully about the basic
-        // data structure and algorithms. The code
-        // is not that much and may be less than 50 lines. If you
-        // find you are writing a lot of code, you
-        // are on the wrong way.
-        if (isLetter(c)) {
-          return identifier(c);
-        } else if (isDigit(c)) {
-          return integerLiteral(c);
-        }
-        return null;
+    Kind kind = match();
+    if (kind == Kind.TOKEN_ID) {
+      Kind keyword = Keywords.lookup(buf, tokenStart, pos);
+      if (keyword != null)
+        return keyword;
     }
+    return kind;
   }
 
-  public Token nextToken() {
-    Token t = null;
-
-    if (peekToken != null) {
-      t = peekToken;
-      peekToken = null;
-      return t;
-    }
-    try {
-      t = this.nextTokenInternal();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
+  // Run the DFA of "TokenSpec" from "tokenStart", and leave "pos" after
+  // the longest token found there. Return its kind, or null if there
+  // is none.
+  private Kind match() {
+    ByteBuffer buf = this.buf;
+    int[] next = Dfa.next;
+    int row = Dfa.START, last = Dfa.DEAD, lastEnd = pos;
+
+    for (int i = tokenStart, end = this.end; i < end; ) {
+      row = next[row | (buf.get(i++) & 0xff)];
+      if (row >= Dfa.ACCEPTING) {
+        last = row;
+        lastEnd = i;
+        if (row >= Dfa.FINAL)
+          break;
+      } else if (row == Dfa.DEAD)
+        break;
     }
-    if (dump)
-      System.out.println(t.toString());
+    pos = lastEnd;
+    return Dfa.accept[last >> 8];
+  }
+
+  private void error() {
+    throw new CompileError("Lexical error: unrecognized character '"
+        + (char) (buf.get(tokenStart) & 0xff) + "' at line " + lineNumber);
+  }
+
+  // When called, return the next token (refer to the code "Token.java")
+  // from the input stream.
+  // Return TOKEN_EOF when reaching the end of the input stream.
+  private Token nextTokenInternal() {
+    Kind kind = scan();
+
+    if (kind == null)
+      error();
+    Token t;
+    if (kind == Kind.TOKEN_ID || kind == Kind.TOKEN_NUM)
+      t = new Token(kind, lineNumber, Symbol.symbol(buf, tokenStart, pos));
+    else
+      t = new Token(kind, lineNumber);
+    if (ctx.lexerDump)
+      ctx.out.println(t.toString());
     return t;
   }
 
-  public Token peek() {
-    if (peekToken != null) {
-      System.err.println("at most one token can be looked ahead");
-      System.exit(1);
-    }
-    this.peekToken = nextToken();
-    return this.peekToken;
+  public Token nextToken() {
+    return this.nextTokenInternal();
+  }
+
+  // Lex all the remaining input at once, into a compact token
+  // stream ending with TOKEN_EOF. This is what the parser reads.
+  public TokenStream tokenize() {
+    TokenStream tokens = tryTokenize();
+
+    if (tokens == null)
+      error();
+    return tokens;
+  }
+
+  // Same as "tokenize", but return null at an unrecognized character,
+  // leaving it in "tokenStart", instead of reporting it.
+  TokenStream tryTokenize() {
+    TokenStream tokens = new TokenStream(buf, (end - pos) / 8);
+    Kind kind;
+
+    do {
+      kind = scan();
+      if (kind == null)
+        return null;
+      tokens.add(kind, lineNumber, tokenStart, pos);
+      if (ctx.lexerDump)
+        ctx.out.println(tokens.token(tokens.size() - 1).toString());
+    } while (kind != Kind.TOKEN_EOF);
+    return tokens;
   }
 }
@@ -0,0 +1,93 @@
+package lexer;
+
+import control.CompilationContext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Lexing of a large source on several cores.
+//
+// The source is cut in front of the lines that start with the keyword
+// "class", outside of any comment. The lexer keeps no state across a
+// line break, so every chunk can be lexed on its own, from line 1, on
+// a ForkJoinPool. The chunk streams are then stitched together, moving
+// the lines of each chunk by the lines of the chunks before it. The
+// result is exactly the stream a single Lexer produces.
+public class ParallelLexer {
+  // the smallest chunk worth a task of its own
+  static final int MIN_CHUNK = 64 << 10;
+
+  private ParallelLexer() {
+  }
+
+  // Lex "buf" from its position to its limit, in parallel if it is at
+  // least "ctx.parallelThreshold" bytes long.
+  public static TokenStream tokenize(CompilationContext ctx, ByteBuffer buf) {
+    int start = buf.position(), end = buf.limit();
+    int parallelThreshold = ctx.parallelThreshold;
+    // dumped tokens must come out in order
+    if (parallelThreshold <= 0 || end - start < parallelThreshold || ctx.lexerDump)
+      return new Lexer(ctx, buf).tokenize();
+
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    if (pool.getParallelism() < 2)
+      return new Lexer(ctx, buf).tokenize();
+    int chunk = Math.max(MIN_CHUNK,
+        (end - start) / (4 * pool.getParallelism()));
+    int[] cuts = cuts(buf, start, end, chunk);
+    if (cuts.length == 2)
+      return new Lexer(ctx, buf).tokenize();
+
+    ArrayList<ForkJoinTask<TokenStream>> tasks = new ArrayList<>();
+    for (int k = 0; k + 1 < cuts.length; k++) {
+      ByteBuffer part = buf.duplicate();
+      part.position(cuts[k]).limit(cuts[k + 1]);
+      tasks.add(pool.submit(() -> new Lexer(ctx, part).tryTokenize()));
+    }
+    TokenStream[] parts = new TokenStream[tasks.size()];
+    for (int k = 0; k < parts.length; k++) {
+      parts[k] = tasks.get(k).join();
+      // lex it again in one piece, to report the error at its real line
+      if (parts[k] == null)
+        return new Lexer(ctx, buf).tokenize();
+    }
+    return TokenStream.concat(buf, parts);
+  }
+
+  // Return the offsets at which to cut "buf[start, end)" into chunks of
+  // about "chunk" bytes, "start" and "end" included.
+  static int[] cuts(ByteBuffer buf, int start, int end, int chunk) {
+    ArrayList<Integer> cuts = new ArrayList<>();
+
+    cuts.add(start);
+    for (int p = start + chunk; p < end; p += chunk) {
+      p = nextCut(buf, p, end);
+      if (p == end)
+        break;
+      cuts.add(p);
+    }
+    cuts.add(end);
+    return cuts.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  // Return the first line at or after "p" that starts with "class", or
+  // "end" if there is none. A line break ends any comment.
+  private static int nextCut(ByteBuffer buf, int p, int end) {
+    for (; p + 5 <= end; p++) {
+      if (buf.get(p) != 'c' || buf.get(p - 1) != '\n')
+        continue;
+      if (buf.get(p + 1) == 'l' && buf.get(p + 2) == 'a'
+          && buf.get(p + 3) == 's' && buf.get(p + 4) == 's'
+          && (p + 5 == end || !isIdChar(buf.get(p + 5))))
+        return p;
+    }
+    return end;
+  }
+
+  private static boolean isIdChar(int c) {
+    return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9');
+  }
+}
@@ -1,5 +1,7 @@
 package lexer;
 
+import util.Symbol;
+
 public class Token {
   // Lab 1, exercise 1: read the MiniJava specification
   // carefully, and answer these two questions:
@@ -56,7 +58,7 @@ public class Token {
   }
 
   public Kind kind; // kind of the token
-  public String lexeme; // extra lexeme for this token, if any
+  public Symbol lexeme; // extra lexeme for this token, if any
   public Integer lineNum; // on which line of the source file this token appears
 
   // Some tokens don't come with lexeme but 
@@ -66,7 +68,7 @@ public class Token {
     this.lineNum = lineNum;
   }
 
-  public Token(Kind kind, Integer lineNum, String lexeme) {
+  public Token(Kind kind, Integer lineNum, Symbol lexeme) {
     this(kind, lineNum);
     this.lexeme = lexeme;
   }
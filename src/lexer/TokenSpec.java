@@ -0,0 +1,51 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+// The tokens of MiniJava, as a list of patterns.
+//
+// This list is the only place where the shape of a token is written
+// down: "Dfa" turns it into the transition table the lexer runs. A
+// pattern is a sequence of characters and of character classes such as
+// "[a-z0-9_]", each optionally followed by '*' or '+'; a backslash
+// makes the next character literal. When several patterns match the
+// same longest input, the first one in the list wins.
+//
+// Keywords are scanned as identifiers, and told apart afterwards by
+// "Keywords.lookup". Blanks and comments are skipped before a token is
+// scanned, they are not tokens.
+final class TokenSpec {
+  private TokenSpec() {
+  }
+
+  static final class Rule {
+    final Kind kind;
+    final String pattern;
+
+    Rule(Kind kind, String pattern) {
+      this.kind = kind;
+      this.pattern = pattern;
+    }
+  }
+
+  static final Rule[] RULES = {
+      new Rule(Kind.TOKEN_ADD, "\\+"),
+      new Rule(Kind.TOKEN_AND, "&&"),
+      new Rule(Kind.TOKEN_ASSIGN, "="),
+      new Rule(Kind.TOKEN_COMMER, ","),
+      new Rule(Kind.TOKEN_DOT, "."),
+      new Rule(Kind.TOKEN_LBRACE, "{"),
+      new Rule(Kind.TOKEN_LBRACK, "\\["),
+      new Rule(Kind.TOKEN_LPAREN, "("),
+      new Rule(Kind.TOKEN_LT, "<"),
+      new Rule(Kind.TOKEN_NOT, "!"),
+      new Rule(Kind.TOKEN_RBRACE, "}"),
+      new Rule(Kind.TOKEN_RBRACK, "\\]"),
+      new Rule(Kind.TOKEN_RPAREN, ")"),
+      new Rule(Kind.TOKEN_SEMI, ";"),
+      new Rule(Kind.TOKEN_SUB, "-"),
+      new Rule(Kind.TOKEN_TIMES, "\\*"),
+      new Rule(Kind.TOKEN_ID, "[a-zA-Z][a-zA-Z0-9_]*"),
+      new Rule(Kind.TOKEN_NUM, "[0-9]+"),
+  };
+}
@@ -0,0 +1,178 @@
+package lexer;
+
+import lexer.Token.Kind;
+import util.CompileError;
+import util.Symbol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// All tokens of one source file, stored as parallel arrays.
+//
+// Token "i" has kind "kind(i)", appears on line "line(i)" and spans
+// the bytes "[start(i), end(i))" of the source buffer. Lexemes are not
+// materialized: identifiers are interned on demand by "lexeme(i)" and
+// integer literals are converted in place by "intValue(i)", so lexing a
+// file produces these few arrays instead of one object per token.
+//
+// The last token is always TOKEN_EOF. Reading past the end keeps
+// returning that token, so that the parser never has to check bounds.
+public class TokenStream {
+  private static final Kind[] KINDS = Kind.values();
+
+  private final ByteBuffer buf; // the source the tokens point into
+  private byte[] kinds; // "Kind.ordinal()" of each token
+  private int[] lines;
+  private int[] starts;
+  private int[] ends;
+  private int size;
+
+  public TokenStream(ByteBuffer buf, int capacity) {
+    this.buf = buf;
+    capacity = Math.max(capacity, 16);
+    this.kinds = new byte[capacity];
+    this.lines = new int[capacity];
+    this.starts = new int[capacity];
+    this.ends = new int[capacity];
+    this.size = 0;
+  }
+
+  void add(Kind kind, int line, int start, int end) {
+    if (size == kinds.length)
+      grow();
+    kinds[size] = (byte) kind.ordinal();
+    lines[size] = line;
+    starts[size] = start;
+    ends[size] = end;
+    size++;
+  }
+
+  private void grow() {
+    int n = size + (size >> 1);
+    kinds = Arrays.copyOf(kinds, n);
+    lines = Arrays.copyOf(lines, n);
+    starts = Arrays.copyOf(starts, n);
+    ends = Arrays.copyOf(ends, n);
+  }
+
+  // Return a copy of this stream in which the tokens "[from, to)"
+  // are replaced by those of "region", except its final TOKEN_EOF.
+  // The tokens after them are moved by "byteDelta" bytes and by
+  // "lineDelta" lines. The copy reads from the whole source buffer of
+  // "region", and this stream is left untouched.
+  public TokenStream splice(int from, int to, TokenStream region,
+                            int byteDelta, int lineDelta) {
+    int n = region.size - 1;
+    int newSize = size - (to - from) + n;
+    TokenStream t = new TokenStream(region.buf.duplicate().clear(), newSize);
+
+    System.arraycopy(kinds, 0, t.kinds, 0, from);
+    System.arraycopy(lines, 0, t.lines, 0, from);
+    System.arraycopy(starts, 0, t.starts, 0, from);
+    System.arraycopy(ends, 0, t.ends, 0, from);
+
+    System.arraycopy(region.kinds, 0, t.kinds, from, n);
+    System.arraycopy(region.lines, 0, t.lines, from, n);
+    System.arraycopy(region.starts, 0, t.starts, from, n);
+    System.arraycopy(region.ends, 0, t.ends, from, n);
+
+    System.arraycopy(kinds, to, t.kinds, from + n, size - to);
+    for (int i = to, j = from + n; i < size; i++, j++) {
+      t.lines[j] = lines[i] + lineDelta;
+      t.starts[j] = starts[i] + byteDelta;
+      t.ends[j] = ends[i] + byteDelta;
+    }
+    t.size = newSize;
+    return t;
+  }
+
+  // Join the streams of consecutive parts of "buf", each lexed from
+  // line 1, into the stream of the whole: the lines of each part are
+  // moved by the lines of the parts before it. Only the TOKEN_EOF of
+  // the last part is kept.
+  static TokenStream concat(ByteBuffer buf, TokenStream[] parts) {
+    int newSize = 1;
+    for (TokenStream part : parts)
+      newSize += part.size - 1;
+    TokenStream t = new TokenStream(buf, newSize);
+
+    int lineOffset = 0;
+    for (int k = 0; k < parts.length; k++) {
+      TokenStream part = parts[k];
+      int n = k == parts.length - 1 ? part.size : part.size - 1;
+      System.arraycopy(part.kinds, 0, t.kinds, t.size, n);
+      System.arraycopy(part.starts, 0, t.starts, t.size, n);
+      System.arraycopy(part.ends, 0, t.ends, t.size, n);
+      for (int i = 0; i < n; i++)
+        t.lines[t.size + i] = part.lines[i] + lineOffset;
+      t.size += n;
+      // the final TOKEN_EOF is on the last line of the part
+      lineOffset += part.lines[part.size - 1] - 1;
+    }
+    return t;
+  }
+
+  // number of tokens, including the final TOKEN_EOF
+  public int size() {
+    return size;
+  }
+
+  public ByteBuffer source() {
+    return buf;
+  }
+
+  private int clamp(int i) {
+    return i < size ? i : size - 1;
+  }
+
+  public Kind kind(int i) {
+    return KINDS[kinds[clamp(i)]];
+  }
+
+  public int line(int i) {
+    return lines[clamp(i)];
+  }
+
+  public int start(int i) {
+    return starts[clamp(i)];
+  }
+
+  public int end(int i) {
+    return ends[clamp(i)];
+  }
+
+  // only identifiers and integer literals come with a lexeme
+  private static boolean hasLexeme(Kind kind) {
+    return kind == Kind.TOKEN_ID || kind == Kind.TOKEN_NUM;
+  }
+
+  // the lexeme of token "i", or null if it has none
+  public Symbol lexeme(int i) {
+    i = clamp(i);
+    if (!hasLexeme(KINDS[kinds[i]]))
+      return null;
+    return Symbol.symbol(buf, starts[i], ends[i]);
+  }
+
+  // the value of the integer literal "i"
+  public int intValue(int i) {
+    i = clamp(i);
+    long n = 0;
+    for (int j = starts[i]; j < ends[i]; j++) {
+      n = n * 10 + (buf.get(j) - '0');
+      if (n > Integer.MAX_VALUE)
+        throw new CompileError("Lexical error: integer literal " + lexeme(i)
+            + " is too large at line " + lines[i]);
+    }
+    return (int) n;
+  }
+
+  // materialize token "i", for dumping and testing
+  public Token token(int i) {
+    i = clamp(i);
+    Kind kind = KINDS[kinds[i]];
+    if (hasLexeme(kind))
+      return new Token(kind, lines[i], lexeme(i));
+    return new Token(kind, lines[i]);
+  }
+}
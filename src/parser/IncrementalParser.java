@@ -0,0 +1,335 @@
+package parser;
+
+import ast.Ast;
+import control.CompilationContext;
+import lexer.Lexer;
+import lexer.Token.Kind;
+import lexer.TokenStream;
+import util.Seq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Objects;
+
+// Parsing of a source file that is being edited.
+//
+// The source, its token stream and its AST are kept, together with
+// the token range of every class and method declaration. After an edit,
+// only the smallest declaration that contains it is re-lexed and
+// re-parsed. The new subtree goes into a fresh program, which shares
+// all other subtrees with the previous one. When an edit does not stay
+// inside one declaration (it crosses two of them, or adds or removes
+// one), the whole file is parsed again.
+//
+// The bytes owned by a declaration run from the end of the token before
+// it to the end of its closing brace: the blanks and comments in front
+// of a declaration belong to it.
+//
+// "Tiger -testIncremental <file>" checks it on a file, see "test".
+public class IncrementalParser {
+  CompilationContext ctx;
+  byte[] source;
+  TokenStream tokens;
+  Ast.Program.T program;
+
+  // the token ranges "[classFrom[c], classTo[c])" of the classes, the
+  // main class first, and "[methodFrom[c][m], methodTo[c][m])" of the
+  // methods of each class
+  int[] classFrom, classTo;
+  int[][] methodFrom, methodTo;
+
+  // "ctx" is the context of the file, whose bytes are "source"
+  public IncrementalParser(CompilationContext ctx, byte[] source) {
+    this.ctx = ctx;
+    parseAll(source);
+  }
+
+  public Ast.Program.T program() {
+    return program;
+  }
+
+  public TokenStream tokens() {
+    return tokens;
+  }
+
+  // Replace the bytes "[start, end)" of the source by "text", and
+  // return the program for the new source.
+  public Ast.Program.T edit(int start, int end, byte[] text) {
+    Objects.checkFromToIndex(start, end, source.length);
+
+    byte[] src = new byte[source.length - (end - start) + text.length];
+    System.arraycopy(source, 0, src, 0, start);
+    System.arraycopy(text, 0, src, start, text.length);
+    System.arraycopy(source, end, src, start + text.length,
+        source.length - end);
+    int byteDelta = text.length - (end - start);
+    int lineDelta = newlines(text, 0, text.length)
+        - newlines(source, start, end);
+
+    int c = find(classFrom, classTo, start, end);
+    if (c >= 0) {
+      int m = find(methodFrom[c], methodTo[c], start, end);
+      if (m >= 0 && reparseMethod(c, m, src, byteDelta, lineDelta))
+        return program;
+      if (reparseClass(c, src, byteDelta, lineDelta))
+        return program;
+    }
+    parseAll(src);
+    return program;
+  }
+
+  // Edit the file "source" declaration by declaration: each method gets
+  // a blank line in front and loses it again, and is then cut out and
+  // pasted back, and each class but the main one is cut out and pasted
+  // back. After every edit, the program and its tokens must be those
+  // of the new source parsed from scratch. Say how each edit went on
+  // "ctx.out", and return whether all of them did.
+  public static boolean test(CompilationContext ctx, byte[] source) {
+    IncrementalParser p = new IncrementalParser(ctx, source);
+    boolean ok = true;
+    for (int c = 0; c < p.classFrom.length; c++) {
+      for (int m = 0; m < p.methodFrom[c].length; m++) {
+        String what = "method " + m + " of class " + c;
+        int start = p.tokens.start(p.methodFrom[c][m]);
+        int end = p.tokens.end(p.methodTo[c][m] - 1);
+        byte[] text = java.util.Arrays.copyOfRange(p.source, start, end);
+        ok &= p.check(start, start, new byte[]{'\n'}, "add a line before " + what);
+        ok &= p.check(start, start + 1, new byte[0], "remove it");
+        ok &= p.check(start, end, new byte[0], "cut " + what);
+        ok &= p.check(start, start, text, "paste it back");
+      }
+      if (c > 0) {
+        String what = "class " + c;
+        int start = p.tokens.start(p.classFrom[c]);
+        int end = p.tokens.end(p.classTo[c] - 1);
+        byte[] text = java.util.Arrays.copyOfRange(p.source, start, end);
+        ok &= p.check(start, end, new byte[0], "cut " + what);
+        ok &= p.check(start, start, text, "paste it back");
+      }
+    }
+    return ok;
+  }
+
+  // make the edit, and check it against a parse from scratch
+  private boolean check(int start, int end, byte[] text, String what) {
+    edit(start, end, text);
+    TokenStream t = new Lexer(ctx, ByteBuffer.wrap(source)).tokenize();
+    boolean same = t.size() == tokens.size()
+        && print(new Parser(t).parse()).equals(print(program));
+    for (int i = 0; same && i < t.size(); i++) {
+      same = t.kind(i) == tokens.kind(i) && t.line(i) == tokens.line(i)
+          && t.start(i) == tokens.start(i) && t.end(i) == tokens.end(i);
+    }
+    ctx.out.println((same ? "ok      " : "FAILED  ") + what);
+    return same;
+  }
+
+  private static String print(Ast.Program.T program) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    program.accept(new ast.PrettyPrintVisitor(new PrintStream(bytes, true)));
+    return bytes.toString();
+  }
+
+  private static int newlines(byte[] bytes, int from, int to) {
+    int n = 0;
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == '\n')
+        n++;
+    }
+    return n;
+  }
+
+  // the first byte owned by the declaration starting at token "from"
+  private int regionStart(int from) {
+    return from == 0 ? 0 : tokens.end(from - 1);
+  }
+
+  // Return the index of the declaration among "[from[k], to[k])" whose
+  // bytes contain "[start, end)", or -1 if there is none.
+  private int find(int[] from, int[] to, int start, int end) {
+    int lo = 0, hi = from.length - 1, k = -1;
+
+    // the last declaration starting at or before "start"
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (regionStart(from[mid]) <= start) {
+        k = mid;
+        lo = mid + 1;
+      } else
+        hi = mid - 1;
+    }
+    if (k < 0)
+      return -1;
+    int regionEnd = tokens.end(to[k] - 1);
+    return start < regionEnd && end <= regionEnd ? k : -1;
+  }
+
+  // Re-lex the bytes of the declaration "[from, to)" in the new source
+  // "src", and splice the result into the token stream. Return null if
+  // they no longer form one declaration starting with "first" and ending
+  // with the brace that closes its first opening brace.
+  private TokenStream relex(int from, int to, Kind first, byte[] src,
+                            int byteDelta, int lineDelta) {
+    int start = regionStart(from);
+    int end = tokens.end(to - 1) + byteDelta;
+    int line = from == 0 ? 1 : tokens.line(from - 1);
+    ByteBuffer buf = ByteBuffer.wrap(src);
+    buf.position(start).limit(end);
+    TokenStream region = new Lexer(ctx, buf, line).tokenize();
+
+    // the last token must end the region, otherwise a comment or an
+    // operator may now run into the bytes after it
+    int n = region.size() - 1;
+    if (n == 0 || region.kind(0) != first
+        || region.kind(n - 1) != Kind.TOKEN_RBRACE || region.end(n - 1) != end)
+      return null;
+    int depth = 0;
+    for (int i = 0; i < n; i++) {
+      Kind kind = region.kind(i);
+      if (kind == Kind.TOKEN_LBRACE)
+        depth++;
+      else if (kind == Kind.TOKEN_RBRACE) {
+        depth--;
+        if (depth < 0 || (depth == 0 && i != n - 1))
+          return null;
+      }
+    }
+    if (depth != 0)
+      return null;
+    return tokens.splice(from, to, region, byteDelta, lineDelta);
+  }
+
+  private boolean reparseMethod(int c, int m, byte[] src,
+                                int byteDelta, int lineDelta) {
+    int from = methodFrom[c][m], to = methodTo[c][m];
+    TokenStream t = relex(from, to, Kind.TOKEN_PUBLIC, src, byteDelta, lineDelta);
+    if (t == null)
+      return false;
+    int delta = t.size() - tokens.size();
+    Parser parser = new Parser(t, from);
+    Ast.Method.T method = parser.parseMethod();
+    if (parser.pos != to + delta)
+      return false;
+
+    Ast.Class.ClassSingle old = (Ast.Class.ClassSingle) classes().get(c - 1);
+    replaceClass(c, new Ast.Class.ClassSingle(old.id, old.extendss,
+        old.decs, old.methods.with(m, method)));
+
+    this.source = src;
+    this.tokens = t;
+    methodTo[c][m] += delta;
+    for (int i = m + 1; i < methodFrom[c].length; i++) {
+      methodFrom[c][i] += delta;
+      methodTo[c][i] += delta;
+    }
+    classTo[c] += delta;
+    shiftClasses(c + 1, delta);
+    return true;
+  }
+
+  private boolean reparseClass(int c, byte[] src, int byteDelta,
+                               int lineDelta) {
+    int from = classFrom[c], to = classTo[c];
+    TokenStream t = relex(from, to, Kind.TOKEN_CLASS, src, byteDelta, lineDelta);
+    if (t == null)
+      return false;
+    int delta = t.size() - tokens.size();
+    Parser parser = new Parser(t, from);
+    if (c == 0) {
+      Ast.MainClass.T mainClass = parser.parseMainClass();
+      if (parser.pos != to + delta)
+        return false;
+      program = new Ast.Program.ProgramSingle(mainClass, classes());
+    } else {
+      Ast.Class.T cls = parser.parseClassDecl();
+      if (parser.pos != to + delta)
+        return false;
+      replaceClass(c, cls);
+    }
+
+    this.source = src;
+    this.tokens = t;
+    classTo[c] += delta;
+    shiftClasses(c + 1, delta);
+    indexMethods(c);
+    return true;
+  }
+
+  private Seq<Ast.Class.T> classes() {
+    return ((Ast.Program.ProgramSingle) program).classes;
+  }
+
+  // a new program, in which class "c" (counting the main class) is "cls"
+  private void replaceClass(int c, Ast.Class.T cls) {
+    Ast.Program.ProgramSingle p = (Ast.Program.ProgramSingle) program;
+    program = new Ast.Program.ProgramSingle(p.mainClass,
+        p.classes.with(c - 1, cls));
+  }
+
+  // move the declarations of the classes from "c" on by "delta" tokens
+  private void shiftClasses(int c, int delta) {
+    for (; c < classFrom.length; c++) {
+      classFrom[c] += delta;
+      classTo[c] += delta;
+      for (int i = 0; i < methodFrom[c].length; i++) {
+        methodFrom[c][i] += delta;
+        methodTo[c][i] += delta;
+      }
+    }
+  }
+
+  private void parseAll(byte[] src) {
+    this.source = src;
+    this.tokens = new Lexer(ctx, ByteBuffer.wrap(src)).tokenize();
+    this.program = new Parser(tokens).parse();
+
+    // a class starts with "class" outside of any brace, and ends
+    // with the brace that brings the depth back to zero
+    ArrayList<Integer> from = new ArrayList<>();
+    ArrayList<Integer> to = new ArrayList<>();
+    int depth = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      Kind kind = tokens.kind(i);
+      if (kind == Kind.TOKEN_CLASS && depth == 0)
+        from.add(i);
+      else if (kind == Kind.TOKEN_LBRACE)
+        depth++;
+      else if (kind == Kind.TOKEN_RBRACE && --depth == 0)
+        to.add(i + 1);
+    }
+    int n = from.size();
+    classFrom = new int[n];
+    classTo = new int[n];
+    methodFrom = new int[n][];
+    methodTo = new int[n][];
+    for (int c = 0; c < n; c++) {
+      classFrom[c] = from.get(c);
+      classTo[c] = to.get(c);
+      indexMethods(c);
+    }
+  }
+
+  // Find the methods of class "c": each one starts with "public" at
+  // depth one. The main class is left out, its only method is part of
+  // its own grammar.
+  private void indexMethods(int c) {
+    ArrayList<Integer> from = new ArrayList<>();
+    ArrayList<Integer> to = new ArrayList<>();
+    if (c > 0) {
+      int depth = 0;
+      for (int i = classFrom[c]; i < classTo[c]; i++) {
+        Kind kind = tokens.kind(i);
+        if (kind == Kind.TOKEN_PUBLIC && depth == 1)
+          from.add(i);
+        else if (kind == Kind.TOKEN_LBRACE)
+          depth++;
+        else if (kind == Kind.TOKEN_RBRACE && --depth == 1)
+          to.add(i + 1);
+      }
+    }
+    methodFrom[c] = from.stream().mapToInt(Integer::intValue).toArray();
+    methodTo[c] = to.stream().mapToInt(Integer::intValue).toArray();
+  }
+}
@@ -1,22 +1,43 @@
 package parser;
 
 import ast.Ast;
+import control.CompilationContext;
 import lexer.Lexer;
-import lexer.Token;
+import lexer.ParallelLexer;
 import lexer.Token.Kind;
+import lexer.TokenStream;
+import util.CompileError;
+import util.Seq;
+import util.Symbol;
 
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 
 public class Parser {
-  Lexer lexer;
-  Token current;
-  Map<String, Ast.Type.T> id2type;
+  TokenStream tokens;
+  int pos; // the cursor: index of the current token in "tokens"
+  Kind current; // the kind of the current token
+  Map<Symbol, Ast.Type.T> id2type;
+  // skip the bodies of methods instead of parsing them, see "skim"
+  private boolean skim;
+
+  public Parser(CompilationContext ctx, java.io.InputStream fstream) {
+    this(ctx, Lexer.readAll(fstream));
+  }
+
+  public Parser(CompilationContext ctx, java.nio.ByteBuffer buf) {
+    this(ParallelLexer.tokenize(ctx, buf));
+  }
+
+  public Parser(TokenStream tokens) {
+    this(tokens, 0);
+  }
 
-  public Parser(String fname, java.io.InputStream fstream) {
-    lexer = new Lexer(fname, fstream);
-    current = lexer.nextToken();
+  // start parsing at the token "pos", to re-parse a single declaration
+  Parser(TokenStream tokens, int pos) {
+    this.tokens = tokens;
+    this.pos = pos;
+    this.current = tokens.kind(pos);
   }
 
   // /////////////////////////////////////////////
@@ -24,45 +45,189 @@ public class Parser {
   // and the parser.
 
   private void advance() {
-    current = lexer.nextToken();
+    current = tokens.kind(++pos);
+  }
+
+  // the kind of the "k"th token after the current one
+  private Kind peek(int k) {
+    return tokens.kind(pos + k);
+  }
+
+  // the lexeme of the current token
+  private Symbol lexeme() {
+    return tokens.lexeme(pos);
   }
 
   private void eatToken(Kind kind) {
-    if (kind == current.kind)
+    if (kind == current)
       advance();
     else {
-      System.out.println("Expects: " + kind.toString());
-      System.out.println("But got: " + current.kind.toString());
-      System.exit(1);
+      throw new CompileError("Expects: " + kind.toString() + "\n"
+          + "But got: " + current.toString());
     }
   }
 
   private void error() {
-    System.out.println("Syntax error: compilation aborting...\n");
-    System.exit(1);
+    throw new CompileError("Syntax error: compilation aborting...\n");
   }
 
   // ////////////////////////////////////////////////////////////
   // below are method for parsing.
 
-  // A bunch of parsing methods to parse expressions. The messy
-  // parts are to deal with precedence and associativity.
+  // A bunch of parsing methods to parse expressions. Precedence
+  // and associativity of the binary operators are dealt with by
+  // "parseExp", from a table of binding powers.
+  //
+  // Expressions nest, through parentheses, indexes, arguments and
+  // "new int [ ]", as deep as the program likes, so they are parsed on
+  // an explicit stack of the expressions begun but not finished,
+  // instead of with a call for each: the Java stack stays flat. The
+  // parse goes down, opening expressions until it reads an atom, and
+  // then up, handing each finished expression to the one waiting for it.
+
+  // what an open expression waits for
+  private static final int OPERAND = 0; // Exp -> PrefixExp (op PrefixExp)*
+  private static final int PAREN = 1; // AtomExp -> ( Exp )
+  private static final int NEW_ARRAY = 2; // AtomExp -> new int [ Exp ]
+  private static final int INDEX = 3; // NotExp -> NotExp [ Exp ]
+  private static final int ARGS = 4; // NotExp -> NotExp .id ( ExpList )
+
+  private static final class Open {
+    final int kind;
+    // OPERAND: the least binding power of its operators
+    final int minPower;
+    // OPERAND: the number of "!" before its first operand
+    int nots;
+    // OPERAND: the operands so far; INDEX, ARGS: the array, the object
+    Ast.Exp.T exp;
+    // OPERAND: the operator waiting for its right operand, if any
+    Kind op;
+    // ARGS: the method, and the arguments so far
+    Symbol id;
+    Seq.Builder<Ast.Exp.T> args;
+
+    Open(int kind, int minPower) {
+      this.kind = kind;
+      this.minPower = minPower;
+    }
 
-  // ExpList -> Exp ExpRest*
-  // ->
-  // ExpRest -> , Exp
-  private LinkedList<Ast.Exp.T> parseExpList() {
+    Open(int kind, Ast.Exp.T exp) {
+      this(kind, 0);
+      this.exp = exp;
+    }
+  }
 
-    LinkedList<Ast.Exp.T> expList = new LinkedList<>();
+  // the binding power of each binary operator, 0 for other tokens.
+  // All of them associate to the left.
+  private static final int[] POWER = new int[Kind.values().length];
 
-    if (current.kind == Kind.TOKEN_RPAREN)
-      return expList;
-    expList.add(parseExp());
-    while (current.kind == Kind.TOKEN_COMMER) {
-      advance();
-      expList.add(parseExp());
+  static {
+    POWER[Kind.TOKEN_AND.ordinal()] = 1;
+    POWER[Kind.TOKEN_LT.ordinal()] = 2;
+    POWER[Kind.TOKEN_ADD.ordinal()] = 3;
+    POWER[Kind.TOKEN_SUB.ordinal()] = 3;
+    POWER[Kind.TOKEN_TIMES.ordinal()] = 4;
+  }
+
+  // Exp -> PrefixExp (op PrefixExp)*
+  // with op one of: && < + - *
+  // PrefixExp -> ! PrefixExp
+  // -> NotExp
+  //
+  // Precedence climbing: an OPERAND parses an expression whose
+  // operators all bind at least as tightly as its "minPower". A run of
+  // operators of the same power is handled by the loop, and each right
+  // operand is an OPERAND of the next power.
+  private Ast.Exp.T parseExp() {
+    java.util.ArrayDeque<Open> open = new java.util.ArrayDeque<>();
+    open.push(new Open(OPERAND, 1));
+    down:
+    while (true) {
+      // a PrefixExp, for the OPERAND on top
+      Open top = open.peek();
+      while (current == Kind.TOKEN_NOT) {
+        top.nots++;
+        advance();
+      }
+      Ast.Exp.T exp = parseAtomExp(open);
+      while (true) {
+        if (exp == null)
+          continue down;
+        exp = parsePostfixes(exp, open);
+        if (exp == null)
+          continue down;
+
+        // the PrefixExp is finished: it is the first operand of the
+        // OPERAND on top
+        top = open.peek();
+        top.exp = (top.nots & 1) == 0x01 ? new Ast.Exp.Not(exp) : exp;
+        while (true) {
+          int power = POWER[current.ordinal()];
+          if (power >= top.minPower) {
+            top.op = current;
+            advance();
+            open.push(new Open(OPERAND, power + 1));
+            continue down;
+          }
+
+          // the OPERAND is finished
+          open.pop();
+          exp = top.exp;
+          Open waiting = open.peek();
+          if (waiting == null)
+            return exp;
+          if (waiting.kind != OPERAND)
+            break;
+          waiting.exp = binary(waiting.op, waiting.exp, exp);
+          waiting.op = null;
+          top = waiting;
+        }
+
+        // an Exp inside an atom, or after it
+        Open waiting = open.pop();
+        switch (waiting.kind) {
+          case PAREN:
+            eatToken(Kind.TOKEN_RPAREN);
+            break;
+          case NEW_ARRAY:
+            eatToken(Kind.TOKEN_RBRACK);
+            exp = new Ast.Exp.NewIntArray(exp);
+            break;
+          case INDEX:
+            exp = new Ast.Exp.ArraySelect(waiting.exp, exp);
+            eatToken(Kind.TOKEN_RBRACK);
+            break;
+          default: // ARGS
+            // ExpList -> Exp ExpRest*
+            // ExpRest -> , Exp
+            waiting.args.add(exp);
+            if (current == Kind.TOKEN_COMMER) {
+              advance();
+              open.push(waiting);
+              open.push(new Open(OPERAND, 1));
+              continue down;
+            }
+            exp = new Ast.Exp.Call(waiting.exp, waiting.id, waiting.args.build());
+            eatToken(Kind.TOKEN_RPAREN);
+            break;
+        }
+      }
+    }
+  }
+
+  private static Ast.Exp.T binary(Kind op, Ast.Exp.T left, Ast.Exp.T right) {
+    switch (op) {
+      case TOKEN_AND:
+        return new Ast.Exp.And(left, right);
+      case TOKEN_LT:
+        return new Ast.Exp.Lt(left, right);
+      case TOKEN_ADD:
+        return new Ast.Exp.Add(left, right);
+      case TOKEN_SUB:
+        return new Ast.Exp.Sub(left, right);
+      default:
+        return new Ast.Exp.Times(left, right);
     }
-    return expList;
   }
 
   // AtomExp -> (exp)
@@ -73,19 +238,21 @@ public class Parser {
   // -> id
   // -> new int [exp]
   // -> new id ()
-  private Ast.Exp.T parseAtomExp() {
+  //
+  // An atom that holds an Exp opens it on "open", and returns null.
+  private Ast.Exp.T parseAtomExp(java.util.ArrayDeque<Open> open) {
 
     Ast.Exp.T exp;
-    String id;
+    Symbol id;
 
-    switch (current.kind) {
+    switch (current) {
       case TOKEN_LPAREN:
         advance();
-        exp = parseExp();
-        eatToken(Kind.TOKEN_RPAREN);
-        return exp;
+        open.push(new Open(PAREN, 0));
+        open.push(new Open(OPERAND, 1));
+        return null;
       case TOKEN_NUM:
-        exp = new Ast.Exp.Num(Integer.parseInt(current.lexeme));
+        exp = new Ast.Exp.Num(tokens.intValue(pos));
         advance();
         return exp;
       case TOKEN_TRUE:
@@ -101,8 +268,8 @@ public class Parser {
         advance();
         return exp;
       case TOKEN_ID:
-        exp = new Ast.Exp.Id(current.lexeme);
-        Ast.Type.T type = id2type.get(current.lexeme);
+        exp = new Ast.Exp.Id(lexeme());
+        Ast.Type.T type = id2type.get(lexeme());
         if (type != null) {
           ((Ast.Exp.Id) exp).type = type;
         }
@@ -111,15 +278,15 @@ public class Parser {
         return exp;
       case TOKEN_NEW: {
         advance();
-        switch (current.kind) {
+        switch (current) {
           case TOKEN_INT:
             advance();
             eatToken(Kind.TOKEN_LBRACK);
-            exp = parseExp();
-            eatToken(Kind.TOKEN_RBRACK);
-            return new Ast.Exp.NewIntArray(exp);
+            open.push(new Open(NEW_ARRAY, 0));
+            open.push(new Open(OPERAND, 1));
+            return null;
           case TOKEN_ID:
-            id = current.lexeme;
+            id = lexeme();
             advance();
             eatToken(Kind.TOKEN_LPAREN);
             eatToken(Kind.TOKEN_RPAREN);
@@ -136,120 +303,45 @@ public class Parser {
   }
 
   // NotExp -> AtomExp
-  // -> AtomExp .id (expList)
-  // -> AtomExp [exp]
-  // -> AtomExp .length
-  private Ast.Exp.T parseNotExp() {
-
-    Ast.Exp.T exp = parseAtomExp();
+  // -> NotExp .id (expList)
+  // -> NotExp [exp]
+  // -> NotExp .length
+  //
+  // The postfixes of "exp", until one that holds an Exp: that one is
+  // opened on "open", and null returned.
+  private Ast.Exp.T parsePostfixes(Ast.Exp.T exp, java.util.ArrayDeque<Open> open) {
 
-    while (current.kind == Kind.TOKEN_DOT || current.kind == Kind.TOKEN_LBRACK) {
+    while (current == Kind.TOKEN_DOT || current == Kind.TOKEN_LBRACK) {
 
-      if (current.kind == Kind.TOKEN_DOT) {
+      if (current == Kind.TOKEN_DOT) {
         advance();
-        if (current.kind == Kind.TOKEN_LENGTH) {
+        if (current == Kind.TOKEN_LENGTH) {
           advance();
-          exp = new Ast.Exp.Length(exp);
-          break;
+          return new Ast.Exp.Length(exp);
         }
-        String id = current.lexeme;
+        Symbol id = lexeme();
         eatToken(Kind.TOKEN_ID);
         eatToken(Kind.TOKEN_LPAREN);
-        LinkedList<Ast.Exp.T> args = parseExpList();
-        exp = new Ast.Exp.Call(exp, id, args);
-        eatToken(Kind.TOKEN_RPAREN);
+        if (current == Kind.TOKEN_RPAREN) {
+          exp = new Ast.Exp.Call(exp, id, new Seq.Builder<Ast.Exp.T>().build());
+          eatToken(Kind.TOKEN_RPAREN);
+          continue;
+        }
+        Open call = new Open(ARGS, exp);
+        call.id = id;
+        call.args = new Seq.Builder<>();
+        open.push(call);
+        open.push(new Open(OPERAND, 1));
+        return null;
       } else {
-        // NotExp -> AtomExp [exp]
+        // NotExp -> NotExp [exp]
         advance();
-        Ast.Exp.T index = parseExp();
-        exp = new Ast.Exp.ArraySelect(exp, index);
-        eatToken(Kind.TOKEN_RBRACK);
+        open.push(new Open(INDEX, exp));
+        open.push(new Open(OPERAND, 1));
+        return null;
       }
     }
 
-
-    return exp;
-  }
-
-  // TimesExp -> ! TimesExp
-  // -> NotExp
-  private Ast.Exp.T parseTimesExp() {
-    int c = 0;
-    while (current.kind == Kind.TOKEN_NOT) {
-      c++;
-      advance();
-    }
-
-    Ast.Exp.T exp = parseNotExp();
-    if ((c & 1) == 0x01) {
-      exp = new Ast.Exp.Not(exp);
-    }
-    return exp;
-  }
-
-  // AddSubExp -> TimesExp * TimesExp
-  // -> TimesExp
-  private Ast.Exp.T parseAddSubExp() {
-
-    Ast.Exp.T right;
-    Ast.Exp.T exp = parseTimesExp();
-
-    while (current.kind == Kind.TOKEN_TIMES) {
-      advance();
-      right = parseTimesExp();
-      exp = new Ast.Exp.Times(exp, right);
-    }
-    return exp;
-  }
-
-  // LtExp -> AddSubExp + AddSubExp
-  // -> AddSubExp - AddSubExp
-  // -> AddSubExp
-  private Ast.Exp.T parseLtExp() {
-    Ast.Exp.T exp, right;
-
-    exp = parseAddSubExp();
-
-    while (current.kind == Kind.TOKEN_ADD || current.kind == Kind.TOKEN_SUB) {
-      Kind kind = current.kind;
-      advance();
-      right = parseAddSubExp();
-
-      if (kind == Kind.TOKEN_ADD) {
-        exp = new Ast.Exp.Add(exp, right);
-      } else {
-        exp = new Ast.Exp.Sub(exp, right);
-      }
-
-    }
-    return exp;
-  }
-
-  // AndExp -> LtExp < LtExp
-  // -> LtExp
-  private Ast.Exp.T parseAndExp() {
-    Ast.Exp.T exp, right;
-    exp = parseLtExp();
-
-    while (current.kind == Kind.TOKEN_LT) {
-      advance();
-      right = parseLtExp();
-      exp = new Ast.Exp.Lt(exp, right);
-    }
-    return exp;
-  }
-
-  // Exp -> AndExp && AndExp
-  // -> AndExp
-  private Ast.Exp.T parseExp() {
-    Ast.Exp.T exp, right;
-
-    exp = parseAndExp();
-    while (current.kind == Kind.TOKEN_AND) {
-      advance();
-      right = parseAndExp();
-      exp = new Ast.Exp.And(exp, right);
-    }
     return exp;
   }
 
@@ -259,89 +351,149 @@ public class Parser {
   // -> System.out.println ( Exp ) ;
   // -> id = Exp ;
   // -> id [ Exp ]= Exp ;
+  //
+  // Statements nest as deep as expressions do, so they too are parsed
+  // on an explicit stack: of the blocks, "if"s and "while"s begun but
+  // not finished.
+  private static final int BLOCK = 0; // { Statement* }
+  private static final int THEN = 1; // if ( Exp ) Statement
+  private static final int ELSE = 2; // if ( Exp ) Statement else Statement
+  private static final int WHILE = 3; // while ( Exp ) Statement
+
+  private static final class OpenStm {
+    int kind;
+    Ast.Exp.T exp; // the condition
+    Ast.Stm.T thenn;
+    Seq.Builder<Ast.Stm.T> stms;
+
+    OpenStm(int kind, Ast.Exp.T exp) {
+      this.kind = kind;
+      this.exp = exp;
+    }
+  }
+
   private Ast.Stm.T parseStatement() {
     // Lab1. Exercise 4: Fill in the missing code
     // to parse a statement.
-    Ast.Stm.T stmt = null;
+    java.util.ArrayDeque<OpenStm> open = new java.util.ArrayDeque<>();
+    Ast.Stm.T stmt;
     Ast.Exp.T exp;
-    Ast.Stm.T thenn, elsee, body;
-    String id;
+    Symbol id;
 
-    switch (current.kind) {
+    while (true) {
+      // down: open statements, until a simple one
+      stmt = null;
+      switch (current) {
 
-      case TOKEN_LBRACE:
-        advance();
-        stmt = new Ast.Stm.Block(parseStatements());
-        eatToken(Kind.TOKEN_RBRACE);
-        break;
-      case TOKEN_IF:
-        advance();
-        eatToken(Kind.TOKEN_LPAREN);
-        exp = parseExp();
-        eatToken(Kind.TOKEN_RPAREN);
-        thenn = parseStatement();
-        eatToken(Kind.TOKEN_ELSE);
-        elsee = parseStatement();
-        stmt = new Ast.Stm.If(exp, thenn, elsee);
-        break;
-      case TOKEN_WHILE:
-        advance();
-        eatToken(Kind.TOKEN_LPAREN);
-        exp = parseExp();
-        eatToken(Kind.TOKEN_RPAREN);
-        body = parseStatement();
-        stmt = new Ast.Stm.While(exp, body);
-        break;
-      case TOKEN_SYSTEM:
-        advance();
-        eatToken(Kind.TOKEN_DOT);
-        eatToken(Kind.TOKEN_OUT);
-        eatToken(Kind.TOKEN_DOT);
-        eatToken(Kind.TOKEN_PRINTLN);
-        eatToken(Kind.TOKEN_LPAREN);
-        exp = parseExp();
-        eatToken(Kind.TOKEN_RPAREN);
-        eatToken(Kind.TOKEN_SEMI);
-        stmt = new Ast.Stm.Print(exp);
-        break;
-      case TOKEN_ID:
-        id = current.lexeme;
-        advance();
-        if (current.kind == Kind.TOKEN_ASSIGN) {
+        case TOKEN_LBRACE:
+          advance();
+          if (startsStatement()) {
+            OpenStm block = new OpenStm(BLOCK, null);
+            block.stms = new Seq.Builder<>();
+            open.push(block);
+            continue;
+          }
+          stmt = new Ast.Stm.Block(new Seq.Builder<Ast.Stm.T>().build());
+          eatToken(Kind.TOKEN_RBRACE);
+          break;
+        case TOKEN_IF:
           advance();
+          eatToken(Kind.TOKEN_LPAREN);
           exp = parseExp();
-          eatToken(Kind.TOKEN_SEMI);
-          stmt = new Ast.Stm.Assign(id, exp);
-        } else if (current.kind == Kind.TOKEN_LBRACK) {
+          eatToken(Kind.TOKEN_RPAREN);
+          open.push(new OpenStm(THEN, exp));
+          continue;
+        case TOKEN_WHILE:
           advance();
-          Ast.Exp.T index = parseExp();
-          eatToken(Kind.TOKEN_RBRACK);
-          eatToken(Kind.TOKEN_ASSIGN);
+          eatToken(Kind.TOKEN_LPAREN);
           exp = parseExp();
+          eatToken(Kind.TOKEN_RPAREN);
+          open.push(new OpenStm(WHILE, exp));
+          continue;
+        case TOKEN_SYSTEM:
+          advance();
+          eatToken(Kind.TOKEN_DOT);
+          eatToken(Kind.TOKEN_OUT);
+          eatToken(Kind.TOKEN_DOT);
+          eatToken(Kind.TOKEN_PRINTLN);
+          eatToken(Kind.TOKEN_LPAREN);
+          exp = parseExp();
+          eatToken(Kind.TOKEN_RPAREN);
           eatToken(Kind.TOKEN_SEMI);
-          stmt = new Ast.Stm.AssignArray(id, index, exp);
-        } else {
-          error();
+          stmt = new Ast.Stm.Print(exp);
+          break;
+        case TOKEN_ID:
+          id = lexeme();
+          advance();
+          if (current == Kind.TOKEN_ASSIGN) {
+            advance();
+            exp = parseExp();
+            eatToken(Kind.TOKEN_SEMI);
+            stmt = new Ast.Stm.Assign(id, exp);
+          } else if (current == Kind.TOKEN_LBRACK) {
+            advance();
+            Ast.Exp.T index = parseExp();
+            eatToken(Kind.TOKEN_RBRACK);
+            eatToken(Kind.TOKEN_ASSIGN);
+            exp = parseExp();
+            eatToken(Kind.TOKEN_SEMI);
+            stmt = new Ast.Stm.AssignArray(id, index, exp);
+          } else {
+            error();
+          }
+          break;
+      }
+
+      // up: hand each finished statement to the one waiting for it
+      while (true) {
+        OpenStm waiting = open.peek();
+        if (waiting == null)
+          return stmt;
+        switch (waiting.kind) {
+          case BLOCK:
+            waiting.stms.add(stmt);
+            if (startsStatement())
+              break;
+            eatToken(Kind.TOKEN_RBRACE);
+            open.pop();
+            stmt = new Ast.Stm.Block(waiting.stms.build());
+            continue;
+          case THEN:
+            waiting.thenn = stmt;
+            eatToken(Kind.TOKEN_ELSE);
+            waiting.kind = ELSE;
+            break;
+          case ELSE:
+            open.pop();
+            stmt = new Ast.Stm.If(waiting.exp, waiting.thenn, stmt);
+            continue;
+          default: // WHILE
+            open.pop();
+            stmt = new Ast.Stm.While(waiting.exp, stmt);
+            continue;
         }
-        break;
+        break; // the next statement of the one waiting
+      }
     }
+  }
 
-    return stmt;
+  private boolean startsStatement() {
+    return current == Kind.TOKEN_LBRACE || current == Kind.TOKEN_IF
+        || current == Kind.TOKEN_WHILE
+        || current == Kind.TOKEN_SYSTEM || current == Kind.TOKEN_ID;
   }
 
   // Statements -> Statement Statements
   // ->
-  private LinkedList<Ast.Stm.T> parseStatements() {
+  private Seq<Ast.Stm.T> parseStatements() {
 
-    LinkedList<Ast.Stm.T> stmts = new LinkedList<>();
+    Seq.Builder<Ast.Stm.T> stmts = new Seq.Builder<>();
 
-    while (current.kind == Kind.TOKEN_LBRACE || current.kind == Kind.TOKEN_IF
-        || current.kind == Kind.TOKEN_WHILE
-        || current.kind == Kind.TOKEN_SYSTEM || current.kind == Kind.TOKEN_ID) {
+    while (startsStatement()) {
       stmts.add(parseStatement());
     }
 
-    return stmts;
+    return stmts.build();
   }
 
   // Type -> int []
@@ -354,22 +506,22 @@ public class Parser {
 
     Ast.Type.T type = null;
 
-    switch (current.kind) {
+    switch (current) {
       case TOKEN_INT:
         advance();
-        type = new Ast.Type.Int();
-        if (current.kind == Kind.TOKEN_LBRACK) {
+        type = Ast.Type.INT;
+        if (current == Kind.TOKEN_LBRACK) {
           advance();
           eatToken(Kind.TOKEN_RBRACK);
-          type = new Ast.Type.IntArray();
+          type = Ast.Type.INT_ARRAY;
         }
         break;
       case TOKEN_BOOLEAN:
         advance();
-        type = new Ast.Type.Boolean();
+        type = Ast.Type.BOOLEAN;
         break;
       case TOKEN_ID:
-        type = new Ast.Type.ClassType(current.lexeme);
+        type = Ast.Type.ClassType.of(lexeme());
         advance();
         break;
       default:
@@ -383,7 +535,7 @@ public class Parser {
     // to parse the "Type" nonterminal in this method, instead of writing
     // a fresh one.
     Ast.Type.T type = parseType();
-    Ast.Dec.T dec = new Ast.Dec.DecSingle(type, current.lexeme);
+    Ast.Dec.T dec = new Ast.Dec.DecSingle(type, lexeme());
     eatToken(Kind.TOKEN_ID);
     eatToken(Kind.TOKEN_SEMI);
     return dec;
@@ -391,76 +543,84 @@ public class Parser {
 
   // VarDecls -> VarDecl VarDecls
   // ->
-  private LinkedList<Ast.Dec.T> parseVarDecls() {
+  private Seq<Ast.Dec.T> parseVarDecls() {
 
-    LinkedList<Ast.Dec.T> decs = new LinkedList<>();
+    Seq.Builder<Ast.Dec.T> decs = new Seq.Builder<>();
 
-    while (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-        || current.kind == Kind.TOKEN_ID) {
-
-
-      Token next = lexer.peek();
-      if (next.kind == Kind.TOKEN_ID || next.kind == Kind.TOKEN_LBRACK) {
-        decs.add(parseVarDecl());
-      } else {
-        break;
-      }
+    // a statement never starts with "int" or "boolean", but it may
+    // with an id: "a = e;", or "a[e] = e;". Only "C c" is a VarDecl.
+    while (current == Kind.TOKEN_INT || current == Kind.TOKEN_BOOLEAN
+        || (current == Kind.TOKEN_ID && peek(1) == Kind.TOKEN_ID)) {
+      decs.add(parseVarDecl());
     }
-    return decs;
+    return decs.build();
   }
 
   // FormalList -> Type id FormalRest*
   // ->
   // FormalRest -> , Type id
-  private LinkedList<Ast.Dec.T> parseFormalList() {
+  private Seq<Ast.Dec.T> parseFormalList() {
 
-    LinkedList<Ast.Dec.T> decs = new LinkedList<>();
+    Seq.Builder<Ast.Dec.T> decs = new Seq.Builder<>();
     Ast.Type.T type;
-    String id;
+    Symbol id;
 
-    if (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-        || current.kind == Kind.TOKEN_ID) {
+    if (current == Kind.TOKEN_INT || current == Kind.TOKEN_BOOLEAN
+        || current == Kind.TOKEN_ID) {
       type = parseType();
-      id = current.lexeme;
+      id = lexeme();
       eatToken(Kind.TOKEN_ID);
 
       decs.add(new Ast.Dec.DecSingle(type, id));
 
-      while (current.kind == Kind.TOKEN_COMMER) {
+      while (current == Kind.TOKEN_COMMER) {
         advance();
         type = parseType();
-        id = current.lexeme;
+        id = lexeme();
         eatToken(Kind.TOKEN_ID);
         decs.add(new Ast.Dec.DecSingle(type, id));
       }
     }
-    return decs;
+    return decs.build();
   }
 
   // Method -> public Type id ( FormalList )
   // { VarDecl* Statement* return Exp ;}
-  private Ast.Method.T parseMethod() {
+  Ast.Method.T parseMethod() {
     // Lab1. Exercise 4: Fill in the missing code
     // to parse a method.
 
-    id2type = new HashMap<>();
-
     advance();
     Ast.Type.T retType = parseType();
-    String id = current.lexeme;
+    Symbol id = lexeme();
     eatToken(Kind.TOKEN_ID);
     eatToken(Kind.TOKEN_LPAREN);
-    LinkedList<Ast.Dec.T> formals = parseFormalList();
+    Seq<Ast.Dec.T> formals = parseFormalList();
     eatToken(Kind.TOKEN_RPAREN);
+    Ast.Method.MethodSingle method = new Ast.Method.MethodSingle(
+        retType, id, formals, null, null, null);
+    if (skim) {
+      method.bodyStart = pos;
+      skipBody();
+      method.bodyEnd = pos;
+    } else {
+      parseMethodBody(method);
+    }
+    return method;
+  }
+
+  // { VarDecl* Statement* return Exp ;}
+  private void parseMethodBody(Ast.Method.MethodSingle method) {
+    id2type = new HashMap<>();
     eatToken(Kind.TOKEN_LBRACE);
 
-    for (Ast.Dec.T d : formals) {
+    for (Ast.Dec.T d : method.formals) {
       Ast.Dec.DecSingle dec = (Ast.Dec.DecSingle)d;
       id2type.put(dec.id, dec.type);
     }
 
 
-    LinkedList<Ast.Dec.T> locals = parseVarDecls();
+    Seq<Ast.Dec.T> locals = parseVarDecls();
 
     for (Ast.Dec.T d : locals) {
       Ast.Dec.DecSingle dec = (Ast.Dec.DecSingle)d;
@@ -468,59 +628,83 @@ public class Parser {
     }
 
 
-    LinkedList<Ast.Stm.T> stmts = parseStatements();
+    Seq<Ast.Stm.T> stmts = parseStatements();
 
     eatToken(Kind.TOKEN_RETURN);
     Ast.Exp.T retExp = parseExp();
     eatToken(Kind.TOKEN_SEMI);
     eatToken(Kind.TOKEN_RBRACE);
-    return new Ast.Method.MethodSingle(retType, id, formals, locals, stmts, retExp);
+    method.locals = locals;
+    method.stms = stmts;
+    method.retExp = retExp;
+  }
+
+  // skip a method body by matching its braces
+  private void skipBody() {
+    eatToken(Kind.TOKEN_LBRACE);
+    int depth = 1;
+    while (depth > 0) {
+      switch (current) {
+        case TOKEN_LBRACE:
+          depth++;
+          break;
+        case TOKEN_RBRACE:
+          depth--;
+          break;
+        case TOKEN_EOF:
+          eatToken(Kind.TOKEN_RBRACE);
+          break;
+        default:
+          break;
+      }
+      advance();
+    }
   }
 
   // MethodDecls -> MethodDecl MethodDecls
   // ->
-  private LinkedList<Ast.Method.T> parseMethodDecls() {
+  private Seq<Ast.Method.T> parseMethodDecls() {
 
-    LinkedList<Ast.Method.T> methods = new LinkedList<>();
+    Seq.Builder<Ast.Method.T> methods = new Seq.Builder<>();
 
-    while (current.kind == Kind.TOKEN_PUBLIC) {
+    while (current == Kind.TOKEN_PUBLIC) {
       methods.add(parseMethod());
     }
-    return methods;
+    return methods.build();
   }
 
   // ClassDecl -> class id { VarDecl* MethodDecl* }
   // -> class id extends id { VarDecl* MethodDecl* }
-  private Ast.Class.T parseClassDecl() {
+  Ast.Class.T parseClassDecl() {
 
-    String id, extends_ = null;
+    Symbol id, extends_ = null;
 
     eatToken(Kind.TOKEN_CLASS);
-    id = current.lexeme;
+    id = lexeme();
 
     eatToken(Kind.TOKEN_ID);
-    if (current.kind == Kind.TOKEN_EXTENDS) {
+    if (current == Kind.TOKEN_EXTENDS) {
       eatToken(Kind.TOKEN_EXTENDS);
-      extends_ = current.lexeme;
+      extends_ = lexeme();
       eatToken(Kind.TOKEN_ID);
     }
     eatToken(Kind.TOKEN_LBRACE);
-    LinkedList<Ast.Dec.T> decs = parseVarDecls();
-    LinkedList<Ast.Method.T> methods = parseMethodDecls();
+    Seq<Ast.Dec.T> decs = parseVarDecls();
+    Seq<Ast.Method.T> methods = parseMethodDecls();
     eatToken(Kind.TOKEN_RBRACE);
     return new Ast.Class.ClassSingle(id, extends_, decs, methods);
   }
 
   // ClassDecls -> ClassDecl ClassDecls
   // ->
-  private LinkedList<Ast.Class.T> parseClassDecls() {
+  private Seq<Ast.Class.T> parseClassDecls() {
 
-    LinkedList<Ast.Class.T> classes = new LinkedList<>();
+    Seq.Builder<Ast.Class.T> classes = new Seq.Builder<>();
 
-    while (current.kind == Kind.TOKEN_CLASS) {
+    while (current == Kind.TOKEN_CLASS) {
       classes.add(parseClassDecl());
     }
-    return classes;
+    return classes.build();
   }
 
   // MainClass -> class id
@@ -530,14 +714,14 @@ public class Parser {
   // Statement
   // }
   // }
-  private Ast.MainClass.T parseMainClass() {
+  Ast.MainClass.T parseMainClass() {
     // Lab1. Exercise 4: Fill in the missing code
     // to parse a main class as described by the
     // grammar above.
-    String id, arg;
+    Symbol id, arg;
     Ast.MainClass.T mainClass;
     advance();
-    id = current.lexeme;
+    id = lexeme();
     eatToken(Kind.TOKEN_ID);
     eatToken(Kind.TOKEN_LBRACE);
     eatToken(Kind.TOKEN_PUBLIC);
@@ -548,7 +732,7 @@ public class Parser {
     eatToken(Kind.TOKEN_STRING);
     eatToken(Kind.TOKEN_LBRACK);
     eatToken(Kind.TOKEN_RBRACK);
-    arg = current.lexeme;
+    arg = lexeme();
     eatToken(Kind.TOKEN_ID);
     eatToken(Kind.TOKEN_RPAREN);
     eatToken(Kind.TOKEN_LBRACE);
@@ -566,7 +750,7 @@ public class Parser {
   // Program -> MainClass ClassDecl*
   private ast.Ast.Program.T parseProgram() {
     Ast.MainClass.T mainClass = parseMainClass();
-    LinkedList<Ast.Class.T> classes = parseClassDecls();
+    Seq<Ast.Class.T> classes = parseClassDecls();
     Ast.Program.T program = new Ast.Program.ProgramSingle(mainClass, classes);
     eatToken(Kind.TOKEN_EOF);
     return program;
@@ -575,4 +759,29 @@ public class Parser {
   public ast.Ast.Program.T parse() {
     return parseProgram();
   }
+
+  // Parse the program, but only skim the bodies of its methods: each
+  // method keeps the tokens of its body, to be parsed by "parseBody"
+  // once it is needed, if ever.
+  public ast.Ast.Program.T skim() {
+    skim = true;
+    try {
+      return parseProgram();
+    } finally {
+      skim = false;
+    }
+  }
+
+  // parse the body of "method", skimmed by "skim" on these tokens
+  public void parseBody(Ast.Method.MethodSingle method) {
+    if (method.bodyStart < 0)
+      return;
+    pos = method.bodyStart;
+    current = tokens.kind(pos);
+    parseMethodBody(method);
+    if (pos != method.bodyEnd)
+      error();
+    method.bodyStart = -1;
+    method.bodyEnd = -1;
+  }
 }
@@ -0,0 +1,19 @@
+package util;
+
+// An error that stops the compilation of a program: a lexical, syntax
+// or type error in it, or a failure to read it or to write its output.
+//
+// The phases throw it instead of exiting, so that a compiler running
+// inside another program ("compiler.Compiler") survives the errors of
+// the programs it compiles. "Tiger" prints the message and exits.
+public class CompileError extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public CompileError(String message) {
+    super(message);
+  }
+
+  public CompileError(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
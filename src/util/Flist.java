@@ -4,11 +4,11 @@ public class Flist<X> {
   public Flist() {
   }
 
-  public java.util.LinkedList<X> list(
-      @SuppressWarnings("unchecked") X... args) {
-    java.util.LinkedList<X> list = new java.util.LinkedList<X>();
-    for (X arg : args)
-      list.addLast(arg);
-    return list;
+  @SafeVarargs
+  public final Seq<X> list(X... args) {
+    Seq.Builder<X> b = new Seq.Builder<>();
+    for (X x : args)
+      b.add(x);
+    return b.build();
   }
 }
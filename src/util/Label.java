@@ -2,10 +2,11 @@ package util;
 
 public class Label {
   private int i;
-  private static int count = 0;
 
-  public Label() {
-    i = count++;
+  // the label numbered "i": the numbers are handed out by the
+  // compilation, see "control.CompilationContext.newLabel"
+  public Label(int i) {
+    this.i = i;
   }
 
   @Override
@@ -0,0 +1,17 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+// Where the code generators write the files they generate.
+public interface Output {
+  // a writer for the generated file "name", closed by the caller
+  Writer open(String name) throws IOException;
+
+  // the files themselves, in the working directory
+  Output FILES = name -> new BufferedWriter(new OutputStreamWriter(
+      new FileOutputStream(name)));
+}
@@ -0,0 +1,110 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+// An immutable list, backed by a single array.
+//
+// The AST keeps all its child lists (arguments, statements, formals,
+// locals, fields, methods and classes) in sequences: indexing is O(1),
+// and a list of n elements costs one array instead of n linked nodes.
+// Sequences are built once, by a "Builder" or by "of", and never
+// change afterwards; all the mutators of "List" throw.
+public final class Seq<X> extends AbstractList<X> implements RandomAccess {
+  private static final Seq<?> EMPTY = new Seq<>(new Object[0], 0);
+
+  private final Object[] items;
+  private final int size;
+
+  private Seq(Object[] items, int size) {
+    this.items = items;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <X> Seq<X> empty() {
+    return (Seq<X>) EMPTY;
+  }
+
+  @SafeVarargs
+  public static <X> Seq<X> of(X... xs) {
+    if (xs.length == 0)
+      return empty();
+    return new Seq<>(Arrays.copyOf(xs, xs.length, Object[].class), xs.length);
+  }
+
+  public static <X> Seq<X> copyOf(Collection<? extends X> xs) {
+    if (xs instanceof Seq) {
+      @SuppressWarnings("unchecked")
+      Seq<X> seq = (Seq<X>) xs;
+      return seq;
+    }
+    if (xs.isEmpty())
+      return empty();
+    Object[] items = xs.toArray();
+    return new Seq<>(items, items.length);
+  }
+
+  // a copy of this sequence, with "x" at index "i"
+  public Seq<X> with(int i, X x) {
+    java.util.Objects.checkIndex(i, size);
+    Object[] items = Arrays.copyOf(this.items, size);
+    items[i] = x;
+    return new Seq<>(items, size);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public X get(int i) {
+    java.util.Objects.checkIndex(i, size);
+    return (X) items[i];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Object[] toArray() {
+    return Arrays.copyOf(items, size);
+  }
+
+  // Collects the elements of a sequence, then hands out the
+  // sequence without copying them again.
+  public static final class Builder<X> {
+    private Object[] items;
+    private int size;
+
+    public Builder() {
+      this.items = new Object[4];
+      this.size = 0;
+    }
+
+    public Builder<X> add(X x) {
+      if (size == items.length)
+        items = Arrays.copyOf(items, size * 2);
+      items[size++] = x;
+      return this;
+    }
+
+    public Builder<X> addAll(Collection<? extends X> xs) {
+      for (X x : xs)
+        add(x);
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    // The builder must not be used any more.
+    public Seq<X> build() {
+      Seq<X> seq = size == 0 ? empty() : new Seq<>(items, size);
+      items = null;
+      return seq;
+    }
+  }
+}
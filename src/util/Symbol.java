@@ -0,0 +1,124 @@
+package util;
+
+import java.nio.ByteBuffer;
+
+// An interned identifier.
+//
+// There is exactly one Symbol for each distinct name, so symbols are
+// compared by identity ("==", or the inherited "equals") and hashed by
+// a value computed once, when the symbol is created. All phases
+// (lexer, AST, elaborator and code generators) key their tables on
+// symbols rather than on strings.
+//
+// The table is global and may be used from several threads at the
+// same time: lookups of existing symbols take no lock, only the
+// creation of a new symbol does.
+public final class Symbol {
+  private final String name;
+  private final int hash; // equals "name.hashCode()"
+
+  private Symbol(String name, int hash) {
+    this.name = name;
+    this.hash = hash;
+  }
+
+  // the intern table: open addressing with linear probing,
+  // its length is always a power of two
+  private static volatile Symbol[] table = new Symbol[1024];
+  private static int size = 0;
+
+  // return the unique symbol for "name"
+  public static Symbol symbol(String name) {
+    int h = name.hashCode();
+    Symbol[] t = table;
+    int mask = t.length - 1;
+    for (int i = h & mask; ; i = (i + 1) & mask) {
+      Symbol s = t[i];
+      if (s == null)
+        return insert(name, h);
+      if (s.hash == h && s.name.equals(name))
+        return s;
+    }
+  }
+
+  // return the unique symbol for the Latin-1 characters in
+  // "buf[start, end)". No string is built if the symbol exists.
+  public static Symbol symbol(ByteBuffer buf, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++)
+      h = 31 * h + (buf.get(i) & 0xff);
+    Symbol[] t = table;
+    int mask = t.length - 1;
+    for (int i = h & mask; ; i = (i + 1) & mask) {
+      Symbol s = t[i];
+      if (s == null)
+        return insert(latin1(buf, start, end), h);
+      if (s.hash == h && s.matches(buf, start, end))
+        return s;
+    }
+  }
+
+  private boolean matches(ByteBuffer buf, int start, int end) {
+    if (this.name.length() != end - start)
+      return false;
+    for (int i = start; i < end; i++) {
+      if (this.name.charAt(i - start) != (buf.get(i) & 0xff))
+        return false;
+    }
+    return true;
+  }
+
+  private static String latin1(ByteBuffer buf, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    buf.get(start, bytes);
+    return new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+  }
+
+  // The lock-free probes above may miss a symbol that is being
+  // inserted concurrently, so look again under the lock.
+  private static synchronized Symbol insert(String name, int h) {
+    Symbol[] t = table;
+    int mask = t.length - 1;
+    int i = h & mask;
+    for (Symbol s; (s = t[i]) != null; i = (i + 1) & mask) {
+      if (s.hash == h && s.name.equals(name))
+        return s;
+    }
+    Symbol s = new Symbol(name, h);
+    // keep the load factor below 1/2
+    if (2 * (size + 1) > t.length) {
+      t = rehash(t);
+      mask = t.length - 1;
+      for (i = h & mask; t[i] != null; i = (i + 1) & mask)
+        ;
+    }
+    t[i] = s;
+    size++;
+    table = t;
+    return s;
+  }
+
+  private static Symbol[] rehash(Symbol[] old) {
+    Symbol[] t = new Symbol[old.length * 2];
+    int mask = t.length - 1;
+    for (Symbol s : old) {
+      if (s == null)
+        continue;
+      int i = s.hash & mask;
+      while (t[i] != null)
+        i = (i + 1) & mask;
+      t[i] = s;
+    }
+    return t;
+  }
+
+  @Override
+  public int hashCode() {
+    return this.hash;
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
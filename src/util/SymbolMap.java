@@ -0,0 +1,129 @@
+package util;
+
+import java.util.function.BiConsumer;
+
+// A map from symbols to values, for the symbol tables of the
+// elaborator and of the code generators.
+//
+// Symbols are interned, so the keys are compared by identity and
+// hashed by the value each symbol keeps. The table is open-addressed
+// with linear probing, at most half full: a lookup is one probe in
+// general, and takes no lock and allocates nothing. Entries are
+// iterated in the order they were first put. There is no "remove",
+// but "clear" empties the map and keeps its arrays, so that a table
+// refilled for each method allocates once.
+//
+// Not thread-safe: each compilation has its own tables.
+public final class SymbolMap<V> {
+  private Symbol[] keys;
+  private Object[] values;
+  // the slots in use, in the order they were filled
+  private int[] used;
+  private int size;
+
+  public SymbolMap() {
+    this(8);
+  }
+
+  // a map for about "expected" entries
+  public SymbolMap(int expected) {
+    int n = 4;
+    while (n < 2 * expected)
+      n <<= 1;
+    this.keys = new Symbol[n];
+    this.values = new Object[n];
+    this.used = new int[n / 2];
+    this.size = 0;
+  }
+
+  private int slot(Symbol key) {
+    int h = key.hashCode();
+    int mask = keys.length - 1;
+    int i = (h ^ (h >>> 16)) & mask;
+    Symbol k;
+    while ((k = keys[i]) != null && k != key)
+      i = (i + 1) & mask;
+    return i;
+  }
+
+  // return null for non-existing keys
+  @SuppressWarnings("unchecked")
+  public V get(Symbol key) {
+    return (V) values[slot(key)];
+  }
+
+  public boolean containsKey(Symbol key) {
+    return keys[slot(key)] != null;
+  }
+
+  // the previous value of "key", or null
+  @SuppressWarnings("unchecked")
+  public V put(Symbol key, V value) {
+    int i = slot(key);
+    if (keys[i] != null) {
+      V old = (V) values[i];
+      values[i] = value;
+      return old;
+    }
+    if (size == used.length) {
+      grow();
+      i = slot(key);
+    }
+    keys[i] = key;
+    values[i] = value;
+    used[size++] = i;
+    return null;
+  }
+
+  private void grow() {
+    Symbol[] oldKeys = keys;
+    Object[] oldValues = values;
+    int[] oldUsed = used;
+    int n = size;
+    keys = new Symbol[oldKeys.length * 2];
+    values = new Object[oldKeys.length * 2];
+    used = new int[oldUsed.length * 2];
+    size = 0;
+    for (int j = 0; j < n; j++) {
+      int i = slot(oldKeys[oldUsed[j]]);
+      keys[i] = oldKeys[oldUsed[j]];
+      values[i] = oldValues[oldUsed[j]];
+      used[size++] = i;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // empty the map, in time proportional to its size
+  public void clear() {
+    for (int j = 0; j < size; j++) {
+      keys[used[j]] = null;
+      values[used[j]] = null;
+    }
+    size = 0;
+  }
+
+  // the entries, in the order they were first put
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<Symbol, ? super V> f) {
+    for (int j = 0; j < size; j++)
+      f.accept(keys[used[j]], (V) values[used[j]]);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int j = 0; j < size; j++) {
+      if (j > 0)
+        sb.append(", ");
+      sb.append(keys[used[j]]).append('=').append(values[used[j]]);
+    }
+    return sb.append('}').toString();
+  }
+}
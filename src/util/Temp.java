@@ -1,13 +1,16 @@
 package util;
 
+// The temporaries of one compilation ("control.CompilationContext"):
+// each one gets the next number.
 public class Temp {
-  private static int count = 0;
+  private int count;
 
-  private Temp() {
+  public Temp() {
+    this.count = 0;
   }
 
   // Factory pattern
-  public static String next() {
-    return "x_" + (Temp.count++);
+  public String next() {
+    return "x_" + (this.count++);
   }
 }
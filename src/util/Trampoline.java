@@ -0,0 +1,60 @@
+package util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+// An explicit stack of continuations, for walking trees without
+// recursion: however deep the tree, the Java stack stays flat.
+//
+// A visitor gives each step of a node to "then", in order: visiting a
+// child, or the code that comes after it. At the top, "then" runs its
+// step at once, and then everything that step scheduled, until there
+// is nothing left. Within a step, "then" only schedules: the steps a
+// step schedules run right after it, in the order they were given,
+// and before the steps that were pending already. So
+//
+//   walk(e.left);
+//   then(() -> say(" + "));
+//   walk(e.right);
+//
+// prints the same as the recursive version. Code in a step that comes
+// after its first "then" runs before the scheduled steps, so it has to
+// be scheduled too. The result of a child, left in a field of the
+// visitor, is read by the step that follows the child.
+public class Trampoline {
+  private final ArrayDeque<Runnable> stack;
+  // the steps scheduled by the running step
+  private final ArrayList<Runnable> pending;
+  private boolean running;
+
+  public Trampoline() {
+    this.stack = new ArrayDeque<>();
+    this.pending = new ArrayList<>();
+    this.running = false;
+  }
+
+  public void then(Runnable step) {
+    if (this.running) {
+      this.pending.add(step);
+      return;
+    }
+    this.running = true;
+    try {
+      run(step);
+      while (!this.stack.isEmpty())
+        run(this.stack.pop());
+    } finally {
+      // after an error, the rest of the walk is dropped
+      this.stack.clear();
+      this.pending.clear();
+      this.running = false;
+    }
+  }
+
+  private void run(Runnable step) {
+    step.run();
+    for (int i = this.pending.size() - 1; i >= 0; i--)
+      this.stack.push(this.pending.get(i));
+    this.pending.clear();
+  }
+}
@@ -2,6 +2,7 @@
 @echo test starting
 @echo =============
 for %%i in (*.java) do java -cp ../bin Tiger %%i
+for %%i in (*.java) do java -cp ../bin Tiger -testIncremental %%i
 @echo =============
 @echo test finished
 @echo ==================================================